@@ -3,163 +3,272 @@ package es.udc.redes.tutorial.copy;
  * Librerías necesarias para la correcta implementación del programa.
  */
 import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+import es.udc.redes.util.ContentTypeDetector;
 
 /*
  * Clase copy que permite copiar el contenido de un archivo de texto o binario a otro.
+ * Cualquier error de la copia termina el programa con el código FAILURE.
  */
 public class Copy {
+    //* Código de salida de una copia fallida.
+    private static final int FAILURE = 1;
+
+    //* Opciones de la línea de comandos.
+    private static boolean verify = false;
+    private static boolean report = false;
+    private static int threads = Runtime.getRuntime().availableProcessors();
+    private static Charset fromCharset = Charset.defaultCharset();
+    private static Charset toCharset = Charset.defaultCharset();
+    private static String lineEnding = null;
+    private static boolean recursive = false;
+    private static boolean useHash = false;
+    private static String manifest = null;
+
     /*
      *  Método principal que ejecuta la copia de archivos.
      *  @param args Argumentos de la línea de comandos. Se esperan dos parámetro:
      *      1. Nombre del archivo de origen.
      *      2. Nombre del archivo de destino.
+     *  Pueden ir precedidos de las opciones:
+     *      -verify       Comprueba la copia binaria comparando sumas CRC32C.
+     *      -report       Muestra el tiempo y la velocidad de la copia.
+     *      -threads <n>  Número máximo de hilos para copiar ficheros grandes.
+     *      -from <cs>    Juego de caracteres del archivo de texto de origen (por defecto, el del sistema).
+     *      -to <cs>      Juego de caracteres del archivo de texto de destino (por defecto, el del sistema).
+     *      -eol <lf|crlf|cr>  Normaliza los finales de línea del archivo de texto.
+     *      -r            Sincroniza recursivamente un directorio de origen en uno de destino.
+     *      -hash         (Con -r) Compara los archivos por su resumen SHA-256 en lugar de por su fecha.
+     *      -manifest <f> (Con -r) Manifiesto de la sincronización anterior, que se actualiza al terminar.
      */
     public static void main (String[] args){
 
+        //* Lectura de las opciones.
+        int i = 0;
+        try {
+            while (i < args.length && args[i].startsWith("-")) {
+                switch (args[i]) {
+                    case "-verify":
+                        verify = true;
+                        break;
+                    case "-report":
+                        report = true;
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "-from":
+                        fromCharset = Charset.forName(args[++i]);
+                        break;
+                    case "-to":
+                        toCharset = Charset.forName(args[++i]);
+                        break;
+                    case "-eol":
+                        lineEnding = parseLineEnding(args[++i]);
+                        break;
+                    case "-r":
+                        recursive = true;
+                        break;
+                    case "-hash":
+                        useHash = true;
+                        break;
+                    case "-manifest":
+                        manifest = args[++i];
+                        break;
+                    default:
+                        throw new IllegalArgumentException(args[i]);
+                }
+                i++;
+            }
+        } catch (RuntimeException e) {
+            i = -1;
+        }
+
         //* Comprueba si el número de argumentos es correcto.
-        if (args.length != 2) {
-            System.err.println("Error: Invalid number of arguments\nUsage: java es.udc.redes.tutorial.copy.Copy <source file> <destination file>");
+        if (i < 0 || args.length - i != 2) {
+            System.err.println("Error: Invalid number of arguments\nUsage: java es.udc.redes.tutorial.copy.Copy "
+                    + "[-verify] [-report] [-threads <n>] [-from <charset>] [-to <charset>] [-eol <lf|crlf|cr>] "
+                    + "<source file> <destination file>\n"
+                    + "       java es.udc.redes.tutorial.copy.Copy -r [-hash] [-manifest <file>] [-threads <n>] "
+                    + "<source directory> <destination directory>");
             System.exit(-1);
         }
 
         //* Obtención de los nombres de los archivos de los argumentos.
-        String fileOrigin = args[0];
-        String fileDestination = args[1];
+        String fileOrigin = args[i];
+        String fileDestination = args[i + 1];
 
-        typeGuesser(fileOrigin, fileDestination);
+        if (recursive) {
+            syncDirectory(fileOrigin, fileDestination);
+        } else {
+            typeGuesser(fileOrigin, fileDestination);
+        }
+    }
+
+    /*
+     * Sincroniza recursivamente un directorio en otro con DirectorySync.
+     * Los archivos se copian byte a byte, sin distinguir entre texto y binario.
+     * @param sourceDirectory      Directorio de origen.
+     * @param destinationDirectory Directorio de destino.
+     */
+    private static void syncDirectory(String sourceDirectory, String destinationDirectory) {
+        try {
+            long start = System.nanoTime();
+            DirectorySync sync = new DirectorySync(Paths.get(sourceDirectory), Paths.get(destinationDirectory),
+                    useHash, manifest != null ? Paths.get(manifest) : null);
+            long errors = sync.sync(threads);
+            System.out.println(sync.summary() + String.format(Locale.ROOT, " in %.3f s",
+                    (System.nanoTime() - start) / 1e9));
+            if (errors > 0) {
+                System.exit(FAILURE);
+            }
+        } catch (NoSuchFileException e) {
+            //* Manejo de error si el directorio no se encuentra.
+            System.err.println("Error: " + e.getMessage());
+            System.exit(FAILURE);
+        } catch (IOException e) {
+            //* Manejo de error de I/0.
+            System.err.println("I/0 error: " + e.getMessage());
+            System.exit(FAILURE);
+        }
     }
 
     /*
      * Método que determina si el archivo es de texto o binario.
-     * Lee los primeros bytes del archivo y analiza su contenido.
-     * Si el porcentaje de bytes no imprimibles es superior al 5%, se trata como archivo binario.
+     * Sin conversión de texto, ambos tipos se copian byte a byte, por lo que no se analiza el archivo.
+     * Con conversión, el tipo se obtiene con ContentTypeDetector, que analiza los primeros bytes del
+     * archivo: si el porcentaje de bytes no imprimibles es superior al 5%, se trata como archivo binario
+     * y se copia sin convertir.
      * @param inputFile  Archivo de origen.
      * @param outputFile Archivo de destino.
      */
     private static void typeGuesser(String inputFile, String outputFile) {
-        FileInputStream input = null;
+        if (fromCharset.equals(toCharset) && lineEnding == null) {
+            copyBinaryFile(inputFile, outputFile);
+            return;
+        }
         try{
-            input = new FileInputStream(inputFile);
-            byte[] buffer = new byte[512];
-            int bytesRead = input.read(buffer);
-
-            int nonTextBytes = 0;
-            for (int i = 0; i < bytesRead; i++) {
-                //* pasa el byte a entero sin signo.
-                int b = buffer[i] & 0xFF;
-                if((b < 32 || b > 126) && b != 9 && b != 10 && b != 13){
-                    nonTextBytes++;
-                }
-            }
-            if (nonTextBytes > bytesRead * 0.05) {
-                //* Si más del 5% de los bytes no son caracteres imprimibles, se trata como binario.
-                copyBinaryFile(inputFile, outputFile);
-            } else{
-                //* Caso contrario, se trata como archivo de texto.
+            //* Se analiza el contenido y no la extensión, como hasta ahora.
+            String contentType = ContentTypeDetector.detectContent(Paths.get(inputFile));
+            if (ContentTypeDetector.isText(contentType)) {
                 copyTextFile(inputFile, outputFile);
+            } else{
+                copyBinaryFile(inputFile, outputFile);
             }
-
-        }catch (FileNotFoundException e){
+        } catch (NoSuchFileException e){
             //* Manejo de error si el archivo no se encuentra.
-            System.err.println("Error: "+ e.getMessage());
+            System.err.println("Error: "+ e.getMessage() + " (No such file or directory)");
+            System.exit(FAILURE);
         } catch (IOException e){
             //* Manejo de error al leer el archivo.
             System.err.println("Error al leer el archivo: " + e.getMessage());
+            System.exit(FAILURE);
         }
 
     }
 
     /*
      * Copia un archivo de texto desde una ubicación de origen a una de destino.
-     * Este método lee el contenido de un archivo de texto línea por línea y lo escribe
-     * en otro archivo. Utiliza `BufferedReader` para la lectura y `PrintWriter` con `BufferedWriter`
-     * para la escritura, mejorando la eficiencia en archivos grandes.
+     * El contenido se convierte por bloques con TextTranscoder, informando de los errores de
+     * lectura, escritura o conversión en lugar de ignorarlos.
      * @param sourceFile      Ruta del archivo de origen.
      * @param destinationFile Ruta del archivo de destino.
      */
     private static void copyTextFile(String sourceFile, String destinationFile) {
-        //* Declaración de flujos de entrada y salida.
-        BufferedReader inputStream = null;
-        PrintWriter outputStream = null;
-
         try{
-            //* Apertura del archivo de origen en modo lectura con Buffer.
-            inputStream = new BufferedReader(new FileReader(sourceFile));
-
-            //* Apertura del archivo de destino en modo de escritura con Buffer.
-            outputStream = new  PrintWriter(new BufferedWriter(new FileWriter(destinationFile)));
-
-            //* Lectura y escritura carácter por carácter hasta el final del archivo.
-            int c;
-            while ((c = inputStream.read()) != -1) {
-                outputStream.write(c);
+            long start = System.nanoTime();
+            long bytes = TextTranscoder.transcode(Paths.get(sourceFile), Paths.get(destinationFile),
+                    fromCharset, toCharset, lineEnding);
+            if (report) {
+                printThroughput("transcode " + fromCharset + " -> " + toCharset, bytes, System.nanoTime() - start);
             }
-
-        }catch (FileNotFoundException e){
+        } catch (NoSuchFileException e) {
             //* Manejo de error si el archivo no se encuentra.
-            System.err.println("Error: "+ e.getMessage());
+            System.err.println("Error: "+ e.getMessage() + " (No such file or directory)");
+            System.exit(FAILURE);
         } catch (IOException e){
-            //* Manejo de error de I/O.
+            //* Manejo de error de I/O o de conversión.
             System.err.println("I/0 error: "+ e.getMessage());
-        } finally {
-            try{
-                //* Cierre de los flujos si están abiertos.
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-                if (outputStream != null) {
-                    outputStream.close();
-                }
-            } catch (IOException e) {
-                //* Manejo de error en el cierre de archivos.
-                System.err.println("I/0 error: " + e.getMessage());
-            }
+            System.exit(FAILURE);
+        }
+    }
+
+    /*
+     * Traduce el nombre de un final de línea a su secuencia de caracteres.
+     * @param name Nombre del final de línea: lf, crlf o cr.
+     * @return La secuencia de caracteres correspondiente.
+     */
+    private static String parseLineEnding(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "lf":
+                return "\n";
+            case "crlf":
+                return "\r\n";
+            case "cr":
+                return "\r";
+            default:
+                throw new IllegalArgumentException("Unknown line ending: " + name);
         }
     }
 
     /*
      * Copia un archivo binario de una ubicación a otra.
-     * Este método lee un archivo binario desde la ubicación especificada en `sourceFile`
-     * y lo copia en la ubicación especificada en `destinationFile`.
+     * Este método copia el archivo especificado en `sourceFile` en la ubicación especificada
+     * en `destinationFile` mediante FastCopy: transferencia directa entre canales y, en
+     * archivos grandes, varios rangos copiados en paralelo.
      * @param sourceFile      Ruta del archivo de origen.
      * @param destinationFile Ruta del archivo de destino.
      */
     private static void copyBinaryFile( String sourceFile, String destinationFile) {
-        //* Declaración de flujos de entrada y salida.
-        FileInputStream inputStream = null;
-        FileOutputStream outputStream = null;
+        Path source = Paths.get(sourceFile);
+        Path destination = Paths.get(destinationFile);
 
         try{
-            inputStream = new FileInputStream(sourceFile);
-            outputStream = new FileOutputStream(destinationFile);
-            byte[] buffer = new byte[4096];
-
-            //* Lee el archivo por bloques y lo copia en el destino.
-            int b;
-            while ((b = inputStream.read(buffer)) != -1) {
-                outputStream.write(buffer, 0, b);
+            long start = System.nanoTime();
+            long bytes = FastCopy.copy(source, destination, threads);
+            long copied = System.nanoTime();
+            if (report) {
+                printThroughput("copy", bytes, copied - start);
             }
-            outputStream.flush();
 
-        } catch (FileNotFoundException e) {
+            //* Verificación opcional de la copia.
+            if (verify) {
+                boolean equal = FastCopy.verify(source, destination, threads);
+                if (report) {
+                    printThroughput("verify", 2 * bytes, System.nanoTime() - copied);
+                }
+                if (!equal) {
+                    System.err.println("Error: verification failed, " + destinationFile + " differs from " + sourceFile);
+                    System.exit(FAILURE);
+                }
+                System.out.println("Verified: " + destinationFile);
+            }
+
+        } catch (NoSuchFileException e) {
             //* Manejo de error si el archivo no se encuentra.
-            System.err.println("Error: "+ e.getMessage());
+            System.err.println("Error: "+ e.getMessage() + " (No such file or directory)");
+            System.exit(FAILURE);
         } catch (IOException e){
             //* Manejo de error de I/0.
             System.err.println("I/0 error: "+ e.getMessage());
-        } finally {
-            try{
-                //* Cierre de los flujos si están abiertos.
-                if (inputStream != null) {
-                    inputStream.close();
-                }
-                if (outputStream != null) {
-                    outputStream.close();
-                }
-            } catch (IOException e) {
-                //* Manejo de error en el cierre de archivos.
-                System.err.println("I/0 error: "+ e.getMessage());
-            }
+            System.exit(FAILURE);
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Muestra el volumen de datos procesado, el tiempo empleado y la velocidad obtenida.
+     * @param phase Fase medida (copia o verificación).
+     * @param bytes Bytes procesados.
+     * @param nanos Tiempo empleado en nanosegundos.
+     */
+    private static void printThroughput(String phase, long bytes, long nanos) {
+        double seconds = nanos / 1e9;
+        System.out.println(String.format(Locale.ROOT, "%s: %d bytes in %.3f s (%.1f MB/s)",
+                phase, bytes, seconds, seconds > 0 ? bytes / seconds / 1e6 : 0.0));
+    }
+}
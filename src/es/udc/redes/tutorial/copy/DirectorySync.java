@@ -0,0 +1,377 @@
+package es.udc.redes.tutorial.copy;
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Sincronización recursiva e incremental de un directorio en otro.
+ * Un ForkJoinPool recorre el árbol de origen en paralelo (una tarea por directorio) y copia
+ * los archivos que han cambiado con el mismo número máximo de hilos. Un archivo se considera
+ * sin cambios si en el destino tiene el mismo tamaño y fecha de modificación o, con la opción
+ * de resumen, el mismo tamaño y resumen SHA-256. Tras copiar un archivo se le asigna la fecha
+ * del original para que la siguiente sincronización lo reconozca.
+ * Opcionalmente se mantiene un manifiesto con el directorio de destino y el tamaño y la fecha de
+ * cada archivo sincronizado. Con la opción de resumen, los archivos de origen que coinciden con su
+ * entrada sólo se comprueban con una consulta de los atributos del destino, sin leer ni resumir su
+ * contenido; sin ella, la comprobación normal ya es esa misma consulta, por lo que el manifiesto no
+ * ahorra nada. Un manifiesto de otro destino se ignora.
+ * Los archivos del destino que no existen en el origen se conservan. El destino no puede estar
+ * dentro del origen, ya que la sincronización recorrería sus propias copias.
+ */
+class DirectorySync {
+
+    //* Primera línea del manifiesto, seguida del destino al que corresponde.
+    private static final String MANIFEST_HEADER = "#destination";
+
+    //* Buffer de lectura para calcular resúmenes, uno por hilo.
+    private static final ThreadLocal<ByteBuffer> HASH_BUFFER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(256 * 1024));
+
+    private final Path source;
+    private final Path destination;
+    private final boolean useHash;
+    private final Path manifestFile;
+
+    //* Manifiesto de la sincronización anterior y de la actual, indexados por ruta relativa.
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    //* Contadores de la sincronización.
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder copied = new LongAdder();
+    private final LongAdder copiedBytes = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    /*
+     * Crea una sincronización.
+     * @param source Directorio de origen.
+     * @param destination Directorio de destino (se crea si no existe).
+     * @param useHash Si es true, compara el contenido con SHA-256 en lugar de la fecha de modificación.
+     * @param manifestFile Archivo de manifiesto, o null para no usarlo.
+     * @throws IOException Si no se puede leer el manifiesto.
+     */
+    DirectorySync(Path source, Path destination, boolean useHash, Path manifestFile) throws IOException {
+        this.source = source;
+        this.destination = destination;
+        this.useHash = useHash;
+        this.manifestFile = manifestFile;
+        this.previous = manifestFile != null && Files.exists(manifestFile)
+                ? readManifest(manifestFile, destinationKey(destination)) : new HashMap<>();
+    }
+
+    /*
+     * Sincroniza el destino con el origen y guarda el manifiesto si se ha indicado.
+     * @param parallelism Número máximo de hilos para recorrer y copiar.
+     * @return Número de archivos que no se han podido sincronizar.
+     * @throws IOException Si el origen no es un directorio, el destino está dentro del origen o no se
+     *      puede guardar el manifiesto.
+     */
+    long sync(int parallelism) throws IOException {
+        if (!Files.isDirectory(source)) {
+            throw new NoSuchFileException(source.toString(), null, "No such directory");
+        }
+        if (destination.toAbsolutePath().normalize().startsWith(source.toAbsolutePath().normalize())) {
+            throw new FileSystemException(destination.toString(), source.toString(),
+                    "Destination is inside the source directory");
+        }
+        Files.createDirectories(destination);
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(new DirectoryTask(source));
+        } finally {
+            pool.shutdown();
+        }
+
+        if (manifestFile != null) {
+            writeManifest();
+        }
+        return errors.sum();
+    }
+
+    /*
+     * @return Resumen de los contadores de la sincronización.
+     */
+    String summary() {
+        return scanned.sum() + " files scanned, " + copied.sum() + " copied (" + copiedBytes.sum() + " bytes), "
+                + unchanged.sum() + " unchanged, " + errors.sum() + " errors";
+    }
+
+    /*
+     * Sincroniza un archivo si ha cambiado.
+     * @param file Archivo de origen.
+     * @param attributes Atributos del archivo de origen.
+     */
+    private void syncFile(Path file, BasicFileAttributes attributes) {
+        String relative = relativeName(file);
+        Path target = destination.resolve(source.relativize(file).toString());
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        scanned.increment();
+        try {
+            //* Con resúmenes, el manifiesto permite omitir el archivo sin leer su contenido, si el destino
+            //* sigue existiendo con el tamaño y la fecha que se le asignaron al copiarlo.
+            Entry known = useHash ? previous.get(relative) : null;
+            if (known != null && known.size == size && known.modified == modified && hasVersion(target, size, modified)) {
+                current.put(relative, known);
+                unchanged.increment();
+                return;
+            }
+
+            if (isUpToDate(file, target, size, modified)) {
+                //* Mismo contenido pero distinta fecha: se corrige la fecha para las siguientes sincronizaciones.
+                if (useHash && Files.getLastModifiedTime(target).toMillis() != modified) {
+                    Files.setLastModifiedTime(target, attributes.lastModifiedTime());
+                }
+                current.put(relative, new Entry(size, modified));
+                unchanged.increment();
+                return;
+            }
+
+            //* Copia a un archivo temporal y sustitución, para no dejar copias a medias.
+            Path temporary = target.resolveSibling(target.getFileName() + ".sync-tmp");
+            try {
+                FastCopy.copy(file, temporary, 1);
+                Files.setLastModifiedTime(temporary, attributes.lastModifiedTime());
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                //* Si la sustitución no se completa, se borra el archivo temporal.
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    //* El error que se informa es el de la copia.
+                }
+                throw e;
+            }
+            current.put(relative, new Entry(size, modified));
+            copied.increment();
+            copiedBytes.add(size);
+        } catch (IOException e) {
+            System.err.println("I/0 error: " + relative + ": " + e.getMessage());
+            errors.increment();
+        }
+    }
+
+    /*
+     * Comprueba si el destino ya tiene el contenido del archivo de origen.
+     * Los resúmenes sólo se calculan si el destino existe y tiene el mismo tamaño.
+     */
+    private boolean isUpToDate(Path file, Path target, long size, long modified) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (!attributes.isRegularFile() || attributes.size() != size) {
+            return false;
+        }
+        if (useHash) {
+            return hash(file).equals(hash(target));
+        }
+        return attributes.lastModifiedTime().toMillis() == modified;
+    }
+
+    /*
+     * Comprueba con una única consulta de atributos que el destino existe con el tamaño y la fecha indicados.
+     */
+    private static boolean hasVersion(Path target, long size, long modified) throws IOException {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            return attributes.isRegularFile() && attributes.size() == size
+                    && attributes.lastModifiedTime().toMillis() == modified;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    /*
+     * @return Ruta absoluta y normalizada del destino, que identifica a qué destino corresponde un manifiesto.
+     */
+    private static String destinationKey(Path destination) {
+        return destination.toAbsolutePath().normalize().toString();
+    }
+
+    /*
+     * Calcula el resumen SHA-256 de un archivo en hexadecimal.
+     */
+    private static String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = HASH_BUFFER.get();
+        buffer.clear();
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (input.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder sB = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sB.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sB.toString();
+    }
+
+    /*
+     * @return Ruta relativa al origen con '/' como separador, usada como clave del manifiesto.
+     */
+    private String relativeName(Path file) {
+        return source.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+    }
+
+    /*
+     * Lee un manifiesto. La primera línea indica el destino ("#destination", tabulador y ruta absoluta);
+     * cada una de las demás contiene: tamaño, fecha en milisegundos y ruta relativa, separados por
+     * tabuladores. Si el manifiesto corresponde a otro destino, o no lo indica, no se usa.
+     * @param destination Ruta absoluta y normalizada del destino actual.
+     */
+    private static Map<String, Entry> readManifest(Path file, String destination) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        try (BufferedReader input = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = input.readLine();
+            if (line == null || !line.equals(MANIFEST_HEADER + "\t" + destination)) {
+                return entries;
+            }
+            while ((line = input.readLine()) != null) {
+                String[] parts = line.split("\t", 3);
+                if (parts.length == 3) {
+                    try {
+                        entries.put(parts[2], new Entry(Long.parseLong(parts[0]), Long.parseLong(parts[1])));
+                    } catch (NumberFormatException e) {
+                        //* Las líneas dañadas se ignoran: el archivo se volverá a comparar.
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /*
+     * Guarda el manifiesto de esta sincronización, ordenado por ruta, sustituyendo al anterior.
+     */
+    private void writeManifest() throws IOException {
+        Path temporary = manifestFile.resolveSibling(manifestFile.getFileName() + ".tmp");
+        try (BufferedWriter output = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            output.write(MANIFEST_HEADER + "\t" + destinationKey(destination));
+            output.newLine();
+            for (Map.Entry<String, Entry> e : new TreeMap<>(current).entrySet()) {
+                Entry entry = e.getValue();
+                output.write(entry.size + "\t" + entry.modified + "\t" + e.getKey());
+                output.newLine();
+            }
+        }
+        Files.move(temporary, manifestFile, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /*
+     * Estado de un archivo sincronizado.
+     */
+    private static class Entry {
+        final long size;
+        final long modified;
+
+        Entry(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    /*
+     * Tarea que sincroniza un directorio: crea su copia, lanza una tarea por subdirectorio
+     * y otra por archivo, y espera a que terminen todas.
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        DirectoryTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            List<RecursiveAction> tasks = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                Files.createDirectories(destination.resolve(source.relativize(directory).toString()));
+                for (Path entry : entries) {
+                    RecursiveAction task = taskFor(entry);
+                    if (task != null) {
+                        tasks.add(task);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("I/0 error: " + directory + ": " + e.getMessage());
+                errors.increment();
+            }
+            invokeAll(tasks);
+        }
+
+        /*
+         * Crea la tarea que sincroniza una entrada del directorio.
+         * Los enlaces simbólicos a archivos se copian como archivos; los de directorios se omiten.
+         * @return La tarea, o null si la entrada se omite.
+         */
+        private RecursiveAction taskFor(Path entry) {
+            try {
+                BasicFileAttributes attributes =
+                        Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                if (attributes.isSymbolicLink()) {
+                    attributes = Files.readAttributes(entry, BasicFileAttributes.class);
+                    if (attributes.isDirectory()) {
+                        return null;
+                    }
+                }
+                if (attributes.isDirectory()) {
+                    return new DirectoryTask(entry);
+                }
+                if (attributes.isRegularFile()) {
+                    BasicFileAttributes fileAttributes = attributes;
+                    return new RecursiveAction() {
+                        @Override
+                        protected void compute() {
+                            syncFile(entry, fileAttributes);
+                        }
+                    };
+                }
+            } catch (IOException e) {
+                System.err.println("I/0 error: " + entry + ": " + e.getMessage());
+                errors.increment();
+            }
+            return null;
+        }
+    }
+}
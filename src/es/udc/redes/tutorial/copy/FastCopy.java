@@ -0,0 +1,205 @@
+package es.udc.redes.tutorial.copy;
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32C;
+
+/*
+ * Motor de copia binaria rápida.
+ * Copia con FileChannel.transferTo, que en Linux usa copy_file_range/sendfile y evita
+ * pasar los datos por la memoria de la JVM. Los ficheros grandes se dividen en rangos
+ * que un ForkJoinPool copia en paralelo sobre un destino reservado de antemano con su
+ * tamaño final. Opcionalmente comprueba la copia comparando la suma CRC32C de cada rango.
+ */
+class FastCopy {
+
+    //* Tamaño a partir del cual la copia se reparte entre varios hilos (64 MB).
+    static final long PARALLEL_THRESHOLD = 64L * 1024 * 1024;
+
+    //* Tamaño máximo de cada rango copiado o verificado por una tarea (16 MB).
+    private static final long RANGE_SIZE = 16L * 1024 * 1024;
+
+    //* Tamaño del buffer de lectura de la verificación.
+    private static final int VERIFY_BUFFER = 1024 * 1024;
+
+    private FastCopy() {
+    }
+
+    /*
+     * Copia un fichero completo.
+     * @param source Fichero de origen.
+     * @param destination Fichero de destino (se crea o se sobrescribe).
+     * @param parallelism Número máximo de hilos para ficheros grandes.
+     * @return Número de bytes copiados.
+     * @throws IOException Si ocurre un error de lectura o escritura.
+     */
+    static long copy(Path source, Path destination, int parallelism) throws IOException {
+        long size = Files.size(source);
+        if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+            throw new IOException("Source and destination are the same file: " + source);
+        }
+
+        //* Reserva del destino con su tamaño final para que cada rango se escriba en su sitio.
+        try (RandomAccessFile output = new RandomAccessFile(destination.toFile(), "rw")) {
+            output.setLength(0);
+            output.setLength(size);
+        }
+
+        if (size < PARALLEL_THRESHOLD || parallelism <= 1) {
+            copyRange(source, destination, 0, size);
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new RangeCopy(source, destination, 0, size));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return size;
+    }
+
+    /*
+     * Comprueba que dos ficheros tienen el mismo contenido comparando la suma CRC32C de cada rango.
+     * @param parallelism Número máximo de hilos para ficheros grandes.
+     * @return true si los contenidos coinciden.
+     * @throws IOException Si ocurre un error de lectura.
+     */
+    static boolean verify(Path source, Path destination, int parallelism) throws IOException {
+        long size = Files.size(source);
+        if (size != Files.size(destination)) {
+            return false;
+        }
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            return pool.invoke(new RangeVerify(source, destination, 0, size));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /*
+     * Copia un rango de bytes del origen a la misma posición del destino.
+     * Cada llamada abre sus propios canales, de modo que varios rangos pueden copiarse a la vez.
+     */
+    private static void copyRange(Path source, Path destination, long start, long end) throws IOException {
+        try (FileChannel input = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(destination, StandardOpenOption.WRITE)) {
+            output.position(start);
+            long position = start;
+            while (position < end) {
+                long transferred = input.transferTo(position, end - position, output);
+                if (transferred <= 0) {
+                    throw new IOException("Source file truncated during copy: " + source);
+                }
+                position += transferred;
+            }
+        }
+    }
+
+    /*
+     * Calcula la suma CRC32C de un rango de un fichero.
+     */
+    private static long checksum(Path file, long start, long end) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(VERIFY_BUFFER, Math.max(1, end - start)));
+        try (FileChannel input = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = start;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = input.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+                crc.update(buffer);
+            }
+        }
+        return crc.getValue();
+    }
+
+    /*
+     * Tarea que copia un rango, dividiéndolo en dos mitades mientras supere RANGE_SIZE.
+     */
+    private static class RangeCopy extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path source;
+        private final Path destination;
+        private final long start;
+        private final long end;
+
+        RangeCopy(Path source, Path destination, long start, long end) {
+            this.source = source;
+            this.destination = destination;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= RANGE_SIZE) {
+                try {
+                    copyRange(source, destination, start, end);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return;
+            }
+            long middle = start + (end - start) / 2;
+            invokeAll(new RangeCopy(source, destination, start, middle),
+                    new RangeCopy(source, destination, middle, end));
+        }
+    }
+
+    /*
+     * Tarea que compara la suma CRC32C de un rango en ambos ficheros.
+     */
+    private static class RangeVerify extends RecursiveTask<Boolean> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path source;
+        private final Path destination;
+        private final long start;
+        private final long end;
+
+        RangeVerify(Path source, Path destination, long start, long end) {
+            this.source = source;
+            this.destination = destination;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected Boolean compute() {
+            if (end - start <= RANGE_SIZE) {
+                try {
+                    return checksum(source, start, end) == checksum(destination, start, end);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            long middle = start + (end - start) / 2;
+            RangeVerify left = new RangeVerify(source, destination, start, middle);
+            left.fork();
+            boolean right = new RangeVerify(source, destination, middle, end).compute();
+            return left.join() && right;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package es.udc.redes.tutorial.copy;
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ * Copia de archivos de texto por bloques con conversión de juego de caracteres.
+ * Los datos se leen en bloques de bytes, se decodifican con un CharsetDecoder, se normalizan
+ * opcionalmente los finales de línea y se vuelven a codificar con un CharsetEncoder, sin
+ * procesar los caracteres de uno en uno. Los bytes que no son válidos en el juego de origen
+ * y los caracteres que no pueden representarse en el de destino provocan un error en lugar
+ * de sustituirse en silencio.
+ */
+class TextTranscoder {
+
+    //* Tamaño de los bloques de lectura y de caracteres.
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private TextTranscoder() {
+    }
+
+    /*
+     * Copia un archivo de texto convirtiendo su juego de caracteres y, opcionalmente, sus finales de línea.
+     * @param source Archivo de origen.
+     * @param destination Archivo de destino (se crea o se sobrescribe).
+     * @param from Juego de caracteres del origen.
+     * @param to Juego de caracteres del destino.
+     * @param eol Final de línea de destino ("\n", "\r\n" o "\r"), o null para conservar los originales.
+     * @return Número de bytes escritos.
+     * @throws IOException Si ocurre un error de lectura, escritura o conversión, o si el origen y el
+     *      destino son el mismo archivo.
+     */
+    static long transcode(Path source, Path destination, Charset from, Charset to, String eol) throws IOException {
+        //* El destino se trunca al abrirlo, por lo que no puede ser el propio origen.
+        if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+            throw new IOException("Source and destination are the same file: " + source);
+        }
+        CharsetDecoder decoder = from.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        CharsetEncoder encoder = to.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+
+        ByteBuffer input = ByteBuffer.allocateDirect(BLOCK_SIZE);
+        CharBuffer chars = CharBuffer.allocate(BLOCK_SIZE);
+        //* Cada carácter puede convertirse en dos al normalizar los finales de línea.
+        CharBuffer normalized = CharBuffer.allocate(2 * BLOCK_SIZE);
+        ByteBuffer output = ByteBuffer.allocateDirect((int) Math.ceil(2 * BLOCK_SIZE * encoder.maxBytesPerChar()));
+
+        long written = 0;
+        boolean[] pendingCR = new boolean[1];
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(destination, StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            boolean endOfFile = false;
+            boolean endOfInput = false;
+            while (!endOfInput) {
+                if (!endOfFile) {
+                    endOfFile = in.read(input) < 0;
+                }
+                input.flip();
+                long blockStart = in.position() - input.remaining();
+                CoderResult result = decoder.decode(input, chars, endOfFile);
+                long position = blockStart + input.position();
+                check(result, position);
+                //* Sólo se termina cuando se ha decodificado todo el archivo.
+                endOfInput = endOfFile && !result.isOverflow();
+                if (endOfInput) {
+                    check(decoder.flush(chars), position);
+                }
+                input.compact();
+
+                chars.flip();
+                CharBuffer block = eol == null ? chars : normalize(chars, normalized, eol, pendingCR, endOfInput);
+                written += encode(encoder, block, output, out, endOfInput);
+                chars.compact();
+            }
+        }
+        return written;
+    }
+
+    /*
+     * Codifica un bloque de caracteres y escribe el resultado, vaciando el buffer de salida cuando se llena.
+     * @return Número de bytes escritos.
+     */
+    private static long encode(CharsetEncoder encoder, CharBuffer chars, ByteBuffer output,
+                               FileChannel out, boolean endOfInput) throws IOException {
+        long written = 0;
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, output, endOfInput);
+            check(result, -1);
+            written += drain(output, out);
+        } while (result.isOverflow());
+        if (endOfInput) {
+            do {
+                result = encoder.flush(output);
+                check(result, -1);
+                written += drain(output, out);
+            } while (result.isOverflow());
+        }
+        return written;
+    }
+
+    /*
+     * Escribe todo el contenido del buffer en el canal y lo deja vacío.
+     * @return Número de bytes escritos.
+     */
+    private static long drain(ByteBuffer output, FileChannel out) throws IOException {
+        output.flip();
+        long written = output.remaining();
+        while (output.hasRemaining()) {
+            out.write(output);
+        }
+        output.clear();
+        return written;
+    }
+
+    /*
+     * Sustituye cualquier final de línea (\r\n, \r o \n) por el indicado.
+     * Un \r al final de un bloque se recuerda para no duplicar el final de línea si el siguiente
+     * bloque empieza por \n.
+     * @param chars Caracteres decodificados (se consumen por completo).
+     * @param normalized Buffer de salida (se reutiliza).
+     * @param pendingCR Indica si el último carácter procesado fue \r (se actualiza).
+     * @param endOfInput Indica si es el último bloque; si no lo es, un carácter sustituto
+     *                   incompleto al final se deja en el buffer de entrada para el siguiente bloque.
+     * @return El buffer de salida preparado para leer.
+     */
+    private static CharBuffer normalize(CharBuffer chars, CharBuffer normalized, String eol,
+                                        boolean[] pendingCR, boolean endOfInput) {
+        normalized.clear();
+        while (chars.hasRemaining()) {
+            char c = chars.get();
+            if (Character.isHighSurrogate(c) && !chars.hasRemaining() && !endOfInput) {
+                chars.position(chars.position() - 1);
+                break;
+            }
+            if (c == '\r') {
+                normalized.put(eol);
+                pendingCR[0] = true;
+            } else if (c == '\n') {
+                if (!pendingCR[0]) {
+                    normalized.put(eol);
+                }
+                pendingCR[0] = false;
+            } else {
+                normalized.put(c);
+                pendingCR[0] = false;
+            }
+        }
+        normalized.flip();
+        return normalized;
+    }
+
+    /*
+     * Convierte un error de codificación en una excepción que indica su posición.
+     * @param position Posición del error en el archivo de origen, o -1 si no se conoce.
+     */
+    private static void check(CoderResult result, long position) throws IOException {
+        if (result.isError()) {
+            try {
+                result.throwException();
+            } catch (IOException e) {
+                throw new IOException(e.getClass().getSimpleName() + ": " + e.getMessage()
+                        + (position >= 0 ? " at byte " + position : ""), e);
+            }
+        }
+    }
+}
@@ -3,12 +3,21 @@ package es.udc.redes.tutorial.info;
  * Librerías necesarias para la correcta implementación del programa.
  */
 import java.io.File;
+import java.io.IOException;
 import java.util.Date;
+import java.util.Set;
+
+import es.udc.redes.util.ContentTypeDetector;
 
 /*
  * Clase Info que permite obtener información detallada sobre un archivo o directorio.
  */
 public class Info {
+    //* Tipos MIME de documentos que se clasifican como texto.
+    private static final Set<String> DOCUMENT_TYPES = Set.of("application/msword",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.oasis.opendocument.text");
+
     /*
      * Método principal que ejecuta la obtención de información del archivo o directorio.
      * @param args Argumentos de la línea de comandos. Se espera un parámetro:
@@ -16,9 +25,16 @@ public class Info {
      */
     public static void main(String[] args) {
 
+        //* Modo recursivo: recorre un directorio completo.
+        if (args.length > 0 && args[0].equals("-r")) {
+            scanTree(args);
+            return;
+        }
+
         //* Comprueba si el número de argumentos es correcto.
         if (args.length != 1) {
-            System.err.println("Error: Invalid number of arguments\nUsage: java es.udc.redes.tutorial.info.Info <relative path>");
+            System.err.println("Error: Invalid number of arguments\nUsage: java es.udc.redes.tutorial.info.Info <relative path>\n"
+                    + "       java es.udc.redes.tutorial.info.Info -r [-format text|csv|json] [-threads <n>] <directory>");
             System.exit(-1);
         }
 
@@ -41,18 +57,11 @@ public class Info {
 
         //* Obtención del nombre y la extensión del archivo.
         String name = inputFile.getName();
-        String nameExtension, extension;
-        int lastPoint = name.lastIndexOf(".");
-        if (lastPoint != -1 && lastPoint < name.length()-1) {
-            nameExtension = name.substring(0, lastPoint);
-            extension = name.substring(lastPoint + 1);
-        } else{
-            nameExtension = name;
-            extension = "";
-        }
+        String extension = getExtension(name);
+        String nameExtension = extension.isEmpty() ? name : name.substring(0, name.length() - extension.length() - 1);
 
         //* Determinación del tipo de archivo.
-        String fileType = getFileType(extension, inputFile);
+        String fileType = getFileType(extension, inputFile.isDirectory());
 
         //* Obtención de la ruta absoluta del archivo o directorio.
         String path = inputFile.getAbsolutePath();
@@ -68,30 +77,90 @@ public class Info {
                 "\nabsolute path: " + path);
     }
 
+    /*
+     * Método que recorre recursivamente un directorio con TreeScanner.
+     * @param args Argumentos de la línea de comandos: -r, opciones y el directorio a analizar.
+     *      -format <text|csv|json> Formato de salida (por defecto, text).
+     *      -threads <n>            Número máximo de hilos del recorrido.
+     */
+    private static void scanTree(String[] args) {
+        String format = TreeScanner.TEXT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int i = 1;
+        try {
+            while (i < args.length - 1 && args[i].startsWith("-")) {
+                if (args[i].equals("-format")) {
+                    format = args[++i];
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    throw new IllegalArgumentException(args[i]);
+                }
+                i++;
+            }
+        } catch (RuntimeException e) {
+            i = -1;
+        }
+        if (i < 0 || i != args.length - 1) {
+            System.err.println("Error: Invalid arguments\nUsage: java es.udc.redes.tutorial.info.Info -r "
+                    + "[-format text|csv|json] [-threads <n>] <directory>");
+            System.exit(-1);
+        }
+
+        //* Verificación de la existencia del directorio.
+        File directory = new File(args[i]);
+        if (!directory.isDirectory()){
+            System.err.println("Error: Input directory " + directory + " does not exist");
+            System.exit(1);
+        }
+
+        try {
+            long errors = new TreeScanner(format).scan(directory.toPath(), threads, System.out);
+            if (errors > 0) {
+                System.exit(1);
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(-1);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /*
+     * Método que obtiene la extensión de un nombre de archivo.
+     * @param name Nombre del archivo.
+     * @return Extensión sin el punto, o cadena vacía si no tiene.
+     */
+    static String getExtension(String name) {
+        int lastPoint = name.lastIndexOf(".");
+        if (lastPoint != -1 && lastPoint < name.length()-1) {
+            return name.substring(lastPoint + 1);
+        }
+        return "";
+    }
+
     /*
      * Método que determina el tipo de archivo basado en su extensión o si es un directorio.
+     * El tipo MIME de la extensión se obtiene de ContentTypeDetector: las imágenes se clasifican
+     * como "image" y los textos y documentos como "text".
      * @param extension Extensión del archivo.
-     * @param file Objeto File que representa el archivo o directorio.
+     * @param isDirectory Indica si la entrada es un directorio.
      * @return Tipo de archivo en forma de cadena de texto.
      */
-    private static String getFileType(String extension, File file) {
-        String fileType;
-
-        if (!extension.isEmpty()){
-            if (extension.equals("jpeg") || extension.equals("jpg") || extension.equals("png") || extension.equals("bmp")) {
-                fileType = "image";
-            } else if (extension.equals("txt") || extension.equals("doc") || extension.equals("docx") || extension.equals("odt")) {
-                fileType = "text";
-            } else {
-                fileType = "unknown";
-            }
-        } else {
-            if (file.isDirectory()) {
-                fileType = "directory";
-            } else {
-                fileType = "unknown";
-            }
+    static String getFileType(String extension, boolean isDirectory) {
+        if (extension.isEmpty()) {
+            return isDirectory ? "directory" : "unknown";
+        }
+        String contentType = ContentTypeDetector.forExtension(extension);
+        if (contentType == null) {
+            return "unknown";
+        } else if (contentType.startsWith("image/")) {
+            return "image";
+        } else if (ContentTypeDetector.isText(contentType) || DOCUMENT_TYPES.contains(contentType)) {
+            return "text";
         }
-        return fileType;
+        return "unknown";
     }
 }
@@ -0,0 +1,278 @@
+package es.udc.redes.tutorial.info;
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Recorrido paralelo de un árbol de directorios para Info.
+ * Un ForkJoinPool procesa cada directorio en una tarea y obtiene los atributos de cada entrada
+ * con una única llamada a Files.readAttributes. Los resultados se envían, a medida que se
+ * encuentran, por una cola acotada a un hilo escritor que los imprime como texto, CSV o JSON
+ * (una línea por entrada), de modo que la memoria usada no depende del tamaño del árbol.
+ * Al terminar se imprimen el número de entradas y el tamaño total por tipo de archivo.
+ */
+class TreeScanner {
+
+    //* Formatos de salida admitidos.
+    static final String TEXT = "text";
+    static final String CSV = "csv";
+    static final String JSON = "json";
+
+    //* Capacidad de la cola entre los hilos del recorrido y el escritor.
+    private static final int QUEUE_CAPACITY = 8192;
+
+    //* Marca de fin de la cola.
+    private static final Entry END = new Entry(null, null, 0, 0, null);
+
+    private final String format;
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Map<String, LongAdder[]> totals = new ConcurrentHashMap<>();
+    private final LongAdder errors = new LongAdder();
+
+    /*
+     * @param format Formato de salida: text, csv o json.
+     */
+    TreeScanner(String format) {
+        if (!format.equals(TEXT) && !format.equals(CSV) && !format.equals(JSON)) {
+            throw new IllegalArgumentException("Unknown format: " + format);
+        }
+        this.format = format;
+    }
+
+    /*
+     * Recorre el directorio e imprime sus entradas y los totales por tipo.
+     * @param root Directorio raíz.
+     * @param parallelism Número máximo de hilos del recorrido.
+     * @param out Flujo de salida de las entradas.
+     * @return Número de entradas que no se han podido leer.
+     * @throws IOException Si ocurre un error al escribir la salida.
+     */
+    long scan(Path root, int parallelism, PrintStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        IOException[] writeError = new IOException[1];
+        Thread writerThread = new Thread(() -> {
+            try {
+                if (format.equals(CSV)) {
+                    writer.write("path,name,extension,size,last_modified,filetype\n");
+                }
+            } catch (IOException e) {
+                writeError[0] = e;
+            }
+            try {
+                //* Tras un error de escritura se sigue vaciando la cola para no bloquear el recorrido.
+                Entry entry;
+                while ((entry = queue.take()) != END) {
+                    if (writeError[0] == null) {
+                        try {
+                            write(writer, entry);
+                        } catch (IOException e) {
+                            writeError[0] = e;
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "info-writer");
+        writerThread.start();
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, parallelism));
+        try {
+            pool.invoke(new DirectoryTask(root));
+        } finally {
+            pool.shutdown();
+            put(END);
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+        writeTotals(writer);
+        writer.flush();
+        return errors.sum();
+    }
+
+    /*
+     * Procesa una entrada: acumula sus totales y la envía al escritor.
+     */
+    private void visit(Path path, BasicFileAttributes attributes) {
+        String name = path.getFileName() != null ? path.getFileName().toString() : path.toString();
+        String extension = Info.getExtension(name);
+        String type = Info.getFileType(extension, attributes.isDirectory());
+        LongAdder[] total = totals.computeIfAbsent(type, t -> new LongAdder[]{new LongAdder(), new LongAdder()});
+        total[0].increment();
+        total[1].add(attributes.size());
+        put(new Entry(path, extension, attributes.size(), attributes.lastModifiedTime().toMillis(), type));
+    }
+
+    /*
+     * Añade una entrada a la cola, esperando si el escritor va retrasado.
+     */
+    private void put(Entry entry) {
+        try {
+            queue.put(entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Escribe una entrada en el formato elegido.
+     */
+    private void write(Writer writer, Entry entry) throws IOException {
+        String path = entry.path.toString();
+        String name = entry.path.getFileName() != null ? entry.path.getFileName().toString() : path;
+        switch (format) {
+            case CSV:
+                writer.write(csv(path) + "," + csv(name) + "," + csv(entry.extension) + "," + entry.size + ","
+                        + new Date(entry.modified).toInstant() + "," + entry.type + "\n");
+                break;
+            case JSON:
+                writer.write("{\"path\":" + json(path) + ",\"name\":" + json(name) + ",\"extension\":"
+                        + json(entry.extension) + ",\"size\":" + entry.size + ",\"lastModified\":\""
+                        + new Date(entry.modified).toInstant() + "\",\"filetype\":\"" + entry.type + "\"}\n");
+                break;
+            default:
+                writer.write(entry.type + "\t" + entry.size + "\t" + new Date(entry.modified) + "\t" + path + "\n");
+        }
+    }
+
+    /*
+     * Escribe los totales por tipo: en texto, a continuación de las entradas; en CSV y JSON,
+     * por la salida de error para no mezclarlos con los datos.
+     */
+    private void writeTotals(Writer writer) throws IOException {
+        Map<String, LongAdder[]> sorted = new TreeMap<>(totals);
+        long count = 0;
+        long size = 0;
+        StringBuilder sB = new StringBuilder();
+        for (Map.Entry<String, LongAdder[]> e : sorted.entrySet()) {
+            long typeCount = e.getValue()[0].sum();
+            long typeSize = e.getValue()[1].sum();
+            count += typeCount;
+            size += typeSize;
+            sB.append("filetype: ").append(e.getKey()).append(", entries: ").append(typeCount)
+                    .append(", size: ").append(typeSize).append('\n');
+        }
+        sB.append("total entries: ").append(count).append(", size: ").append(size);
+        if (errors.sum() > 0) {
+            sB.append(", errors: ").append(errors.sum());
+        }
+        if (format.equals(TEXT)) {
+            writer.write(sB.append('\n').toString());
+        } else {
+            System.err.println(sB);
+        }
+    }
+
+    /*
+     * Escapa un campo CSV si contiene comas, comillas o saltos de línea.
+     */
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /*
+     * Convierte un texto en una cadena JSON.
+     */
+    private static String json(String value) {
+        StringBuilder sB = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sB.append('\\').append(c);
+            } else if (c < 0x20) {
+                sB.append(String.format("\\u%04x", (int) c));
+            } else {
+                sB.append(c);
+            }
+        }
+        return sB.append('"').toString();
+    }
+
+    /*
+     * Datos de una entrada del árbol.
+     */
+    private static class Entry {
+        final Path path;
+        final String extension;
+        final long size;
+        final long modified;
+        final String type;
+
+        Entry(Path path, String extension, long size, long modified, String type) {
+            this.path = path;
+            this.extension = extension;
+            this.size = size;
+            this.modified = modified;
+            this.type = type;
+        }
+    }
+
+    /*
+     * Tarea que procesa las entradas de un directorio y lanza una tarea por cada subdirectorio.
+     * Los enlaces simbólicos no se siguen, para no recorrer ciclos.
+     */
+    private class DirectoryTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path directory;
+
+        DirectoryTask(Path directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirectoryTask> subdirectories = new ArrayList<>();
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    try {
+                        BasicFileAttributes attributes =
+                                Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        visit(entry, attributes);
+                        if (attributes.isDirectory()) {
+                            subdirectories.add(new DirectoryTask(entry));
+                        }
+                    } catch (IOException e) {
+                        System.err.println("Error: " + e.getMessage());
+                        errors.increment();
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                errors.increment();
+            }
+            invokeAll(subdirectories);
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package es.udc.redes.tutorial.tcp.client;
+
+import java.net.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Benchmark client for the TCP echo servers (TcpServer and MonoThreadTcpServer).
+ * Opens several connections, sends fixed-size newline-terminated messages on each
+ * of them and measures the round-trip time of every echo. All connections are
+ * non-blocking channels driven by a single thread and selector, so thousands of
+ * them can be opened without one thread each. Results are printed
+ * and appended as one row to a CSV file so runs against different servers can
+ * be compared.
+ */
+public class TcpBenchmark {
+
+    private static final String CSV_HEADER = "date,label,server,port,connections,message_size,"
+            + "messages_per_connection,target_rate,elapsed_s,messages,errors,msgs_per_s,mb_per_s,"
+            + "p50_us,p90_us,p99_us,max_us";
+
+    // Give up when nothing is received for 300 secs
+    private static final long TIMEOUT_NANOS = 300_000_000_000L;
+
+    public static void main(String argv[]) {
+        if (argv.length != 7 && argv.length != 8) {
+            System.err.println("Format: es.udc.redes.tutorial.tcp.client.TcpBenchmark <server_address> <port_number> "
+                    + "<connections> <message_size> <messages_per_connection> <rate_msgs_per_sec (0 = unlimited)> "
+                    + "<csv_file> [label]");
+            System.exit(-1);
+        }
+        try {
+            InetAddress serverAddress = InetAddress.getByName(argv[0]);
+            int serverPort = Integer.parseInt(argv[1]);
+            int connections = Integer.parseInt(argv[2]);
+            int messageSize = Integer.parseInt(argv[3]);
+            int messagesPerConnection = Integer.parseInt(argv[4]);
+            double rate = Double.parseDouble(argv[5]);
+            String csvFile = argv[6];
+            String label = argv.length == 8 ? argv[7] : "";
+            if (connections < 1 || messageSize < 1 || messagesPerConnection < 1 || rate < 0) {
+                throw new IllegalArgumentException("connections, message size and messages must be positive");
+            }
+
+            // Every message is message_size bytes long, including the final newline
+            byte[] message = new byte[messageSize];
+            for (int i = 0; i < messageSize - 1; i++) {
+                message[i] = (byte) ('a' + i % 26);
+            }
+            message[messageSize - 1] = '\n';
+
+            // Interval between two sends on the same connection (0 = send as fast as possible)
+            long intervalNanos = rate > 0 ? (long) (connections * 1e9 / rate) : 0;
+
+            System.out.println("CLIENT: Benchmarking " + serverAddress + ":" + serverPort + " with "
+                    + connections + " connections, " + messagesPerConnection + " messages of "
+                    + messageSize + " bytes each");
+
+            // All connections are driven by this thread through a single selector
+            long[] latencies = new long[connections * messagesPerConnection];
+            int[] totals = new int[2];
+            long start = runConnections(serverAddress, serverPort, connections, message,
+                    messagesPerConnection, intervalNanos, latencies, totals);
+            int count = totals[0];
+            int errors = totals[1];
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            Arrays.sort(latencies, 0, count);
+
+            double msgsPerSec = count / elapsed;
+            double mbPerSec = (double) count * messageSize / elapsed / 1e6;
+            long p50 = percentile(latencies, count, 50);
+            long p90 = percentile(latencies, count, 90);
+            long p99 = percentile(latencies, count, 99);
+            long max = count > 0 ? latencies[count - 1] / 1000 : 0;
+
+            System.out.println("CLIENT: " + count + " messages in " + String.format(Locale.ROOT, "%.3f", elapsed)
+                    + " s (" + errors + " connections failed)");
+            System.out.println(String.format(Locale.ROOT, "CLIENT: %.1f msgs/s, %.3f MB/s", msgsPerSec, mbPerSec));
+            System.out.println("CLIENT: latency p50=" + p50 + " us p90=" + p90 + " us p99=" + p99
+                    + " us max=" + max + " us");
+            printHistogram(latencies, count);
+
+            String row = String.join(",", new Date().toString(), label, serverAddress.getHostAddress(),
+                    String.valueOf(serverPort), String.valueOf(connections), String.valueOf(messageSize),
+                    String.valueOf(messagesPerConnection), String.valueOf(rate),
+                    String.format(Locale.ROOT, "%.3f", elapsed), String.valueOf(count), String.valueOf(errors),
+                    String.format(Locale.ROOT, "%.1f", msgsPerSec), String.format(Locale.ROOT, "%.3f", mbPerSec),
+                    String.valueOf(p50), String.valueOf(p90), String.valueOf(p99), String.valueOf(max));
+            appendCsv(csvFile, row);
+            System.out.println("CLIENT: Results appended to " + csvFile);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Opens every connection with non-blocking channels, waits until all of them are
+     * connected and then drives them from this thread with one selector. Each
+     * connection sends a message, waits for its complete echo and sends the next one.
+     * When a rate is given the sends follow a fixed schedule and the latency is
+     * measured from the scheduled time, so a slow server is not hidden by the
+     * client waiting for it.
+     * @param latencies receives the latency of every completed message, in nanoseconds
+     * @param totals receives the number of completed messages and of failed connections
+     * @return the System.nanoTime() at which the measurement started
+     */
+    private static long runConnections(InetAddress serverAddress, int serverPort, int connections, byte[] message,
+                                       int messages, long intervalNanos, long[] latencies, int[] totals)
+            throws IOException {
+        List<Connection> all = new ArrayList<>();
+        try (Selector selector = Selector.open()) {
+            // Connect every channel before starting the clock
+            int pending = 0;
+            for (int c = 0; c < connections; c++) {
+                Connection connection = new Connection(message, messages);
+                all.add(connection);
+                try {
+                    connection.channel = SocketChannel.open();
+                    connection.channel.configureBlocking(false);
+                    connection.channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    if (connection.channel.connect(new InetSocketAddress(serverAddress, serverPort))) {
+                        connection.channel.register(selector, 0, connection);
+                    } else {
+                        connection.channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                        pending++;
+                    }
+                } catch (IOException e) {
+                    connection.fail(e);
+                }
+            }
+            long lastProgress = System.nanoTime();
+            while (pending > 0) {
+                if (selector.select(1000) == 0 && System.nanoTime() - lastProgress > TIMEOUT_NANOS) {
+                    throw new SocketTimeoutException("Connections not established in 300 secs");
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (connection.channel.finishConnect()) {
+                            key.interestOps(0);
+                            pending--;
+                        }
+                    } catch (IOException e) {
+                        connection.fail(e);
+                        pending--;
+                    }
+                    lastProgress = System.nanoTime();
+                }
+                selector.selectedKeys().clear();
+            }
+
+            // Every connection starts with its first message due at the start time
+            long start = System.nanoTime();
+            PriorityQueue<Connection> due = new PriorityQueue<>(Comparator.comparingLong((Connection c) -> c.scheduled));
+            int active = 0;
+            for (Connection connection : all) {
+                if (!connection.failed) {
+                    connection.scheduled = start;
+                    due.add(connection);
+                    active++;
+                }
+            }
+
+            lastProgress = start;
+            while (active > 0) {
+                // Start the sends whose time has come
+                long now = System.nanoTime();
+                while (!due.isEmpty() && due.peek().scheduled <= now) {
+                    Connection connection = due.poll();
+                    // Without a rate the latency is measured from the actual send
+                    connection.sendTime = intervalNanos > 0 ? connection.scheduled : now;
+                    connection.output.clear();
+                    connection.input.clear();
+                    try {
+                        connection.write(selector);
+                    } catch (IOException e) {
+                        connection.fail(e);
+                        active--;
+                    }
+                }
+
+                long waitMillis = due.isEmpty() ? 1000 : (due.peek().scheduled - System.nanoTime()) / 1000000;
+                int ready = waitMillis > 0 ? selector.select(waitMillis) : selector.selectNow();
+                now = System.nanoTime();
+                if (ready == 0) {
+                    if (due.isEmpty() && now - lastProgress > TIMEOUT_NANOS) {
+                        throw new SocketTimeoutException("Nothing received in 300 secs");
+                    }
+                    continue;
+                }
+                lastProgress = now;
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isWritable()) {
+                            connection.write(selector);
+                        } else if (key.isReadable() && connection.read(now)) {
+                            // Complete echo received: schedule the next message or finish
+                            if (connection.completed == messages) {
+                                connection.close();
+                                active--;
+                            } else {
+                                key.interestOps(0);
+                                connection.scheduled = intervalNanos > 0
+                                        ? start + connection.completed * intervalNanos : now;
+                                due.add(connection);
+                            }
+                        }
+                    } catch (IOException e) {
+                        connection.fail(e);
+                        active--;
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+
+            // Merge the latencies of every connection
+            int count = 0;
+            int errors = 0;
+            for (Connection connection : all) {
+                if (connection.completed < messages) {
+                    errors++;
+                }
+                System.arraycopy(connection.latencies, 0, latencies, count, connection.completed);
+                count += connection.completed;
+            }
+            totals[0] = count;
+            totals[1] = errors;
+            return start;
+        } finally {
+            for (Connection connection : all) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * State of one benchmark connection: the message being sent, the echo being
+     * received and the latencies measured so far.
+     */
+    private static class Connection {
+        final ByteBuffer output;
+        final ByteBuffer input;
+        final long[] latencies;
+        SocketChannel channel;
+        long scheduled;
+        long sendTime;
+        int completed = 0;
+        boolean failed = false;
+
+        Connection(byte[] message, int messages) {
+            this.output = ByteBuffer.wrap(message).asReadOnlyBuffer();
+            this.input = ByteBuffer.allocate(message.length);
+            this.latencies = new long[messages];
+        }
+
+        /**
+         * Writes as much of the message as possible, then waits to write the rest
+         * or, once it is all sent, to read the echo.
+         */
+        void write(Selector selector) throws IOException {
+            channel.write(output);
+            channel.register(selector, output.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ, this);
+        }
+
+        /**
+         * Reads the available part of the echo.
+         * @return true if the echo is now complete
+         */
+        boolean read(long now) throws IOException {
+            if (channel.read(input) < 0) {
+                throw new EOFException("Connection closed by the server");
+            }
+            if (input.hasRemaining()) {
+                return false;
+            }
+            latencies[completed++] = now - sendTime;
+            return true;
+        }
+
+        void fail(IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            failed = true;
+            close();
+        }
+
+        void close() {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Returns the given percentile, in microseconds, of the first count sorted latencies.
+     */
+    private static long percentile(long[] sorted, int count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1000;
+    }
+
+    /**
+     * Prints the latency distribution in power-of-two microsecond buckets.
+     */
+    private static void printHistogram(long[] sorted, int count) {
+        int i = 0;
+        for (long upper = 1; i < count; upper <<= 1) {
+            int inBucket = 0;
+            while (i < count && sorted[i] / 1000 < upper) {
+                inBucket++;
+                i++;
+            }
+            if (inBucket > 0) {
+                System.out.println(String.format(Locale.ROOT, "  < %8d us: %10d (%5.1f%%)",
+                        upper, inBucket, 100.0 * inBucket / count));
+            }
+        }
+    }
+
+    /**
+     * Appends a row to the CSV file, writing the header first if the file is new.
+     */
+    private static void appendCsv(String csvFile, String row) throws IOException {
+        File file = new File(csvFile);
+        boolean isNew = !file.exists() || file.length() == 0;
+        try (PrintWriter output = new PrintWriter(new FileWriter(file, true))) {
+            if (isNew) {
+                output.println(CSV_HEADER);
+            }
+            output.println(row);
+            if (output.checkError()) {
+                throw new IOException("Cannot write " + csvFile);
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package es.udc.redes.tutorial.tcp.client;
 
 import java.net.*;
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * Implements an echo client using TCP
@@ -9,8 +10,15 @@ import java.io.*;
 public class TcpClient {
 
     public static void main(String argv[]) {
+        // Benchmark mode: delegate to TcpBenchmark with the remaining arguments
+        if (argv.length > 0 && argv[0].equals("-bench")) {
+            TcpBenchmark.main(Arrays.copyOfRange(argv, 1, argv.length));
+            return;
+        }
         if (argv.length != 3) {
-            System.err.println("Format: es.udc.redes.tutorial.tcp.client.TcpClient <server_address> <port_number> <message>");
+            System.err.println("Format: es.udc.redes.tutorial.tcp.client.TcpClient <server_address> <port_number> <message>\n"
+                    + "        es.udc.redes.tutorial.tcp.client.TcpClient -bench <server_address> <port_number> "
+                    + "<connections> <message_size> <messages_per_connection> <rate_msgs_per_sec> <csv_file> [label]");
             System.exit(-1);
         }
         Socket socket = null;
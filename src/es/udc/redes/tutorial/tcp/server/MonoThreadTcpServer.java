@@ -5,13 +5,40 @@ package es.udc.redes.tutorial.tcp.server;
  */
 import java.net.*;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
 
 /*
  * Servidor TCP monohilo (MonoThread TCP Echo Server).
  * Este servidor escucha conexiones entrantes en un puerto específico, recibe mensajes
  * de los clientes y los devuelve sin modificaciones (eco).
+ * Un único hilo multiplexa todas las conexiones mediante un Selector y canales no
+ * bloqueantes, de modo que un cliente lento no detiene al resto. Cada conexión tiene
+ * su propio buffer y las escrituras parciales se completan cuando el canal vuelve a
+ * admitir escritura. Las conexiones sin actividad durante 300 segundos se cierran una a
+ * una; el servidor sólo termina si pasa ese tiempo sin ninguna conexión abierta. Si no
+ * se pueden aceptar conexiones (por ejemplo, por falta de descriptores de archivo), se
+ * deja de aceptar durante un momento sin cerrar el canal de escucha. Permite comparar
+ * este diseño con el de un hilo por conexión de TcpServer.
  */
 public class MonoThreadTcpServer {
+
+    //* Tamaño del buffer asociado a cada conexión.
+    private static final int BUFFER_SIZE = 8192;
+
+    //* Tiempo máximo de espera sin actividad (300 segundos), por conexión y del servidor sin conexiones.
+    private static final long TIMEOUT = 300000;
+
+    //* Intervalo entre dos revisiones de las conexiones inactivas (1 segundo).
+    private static final long SWEEP_INTERVAL = 1000;
+
+    //* Pausa antes de volver a aceptar conexiones tras un error al aceptar (100 ms).
+    private static final long ACCEPT_BACKOFF = 100;
+
     /*
      * Método principal que inicia el servidor.
      * @param argv Argumentos de la línea de comandos. Se espera un parámetro:
@@ -22,45 +49,78 @@ public class MonoThreadTcpServer {
             System.err.println("Format: es.udc.redes.tutorial.tcp.server.MonoThreadTcpServer <port>");
             System.exit(-1);
         }
-        ServerSocket listeningSocket = null;
+        ServerSocketChannel listeningChannel = null;
+        Selector selector = null;
         try {
 
             int port = Integer.parseInt(argv[0]);
 
-            //* Crear un socket de servidor que escucha en el puerto especificado.
-            listeningSocket = new ServerSocket(port);
+            //* Crear un canal de servidor no bloqueante que escucha en el puerto especificado.
+            selector = Selector.open();
+            //* El JDK prepara el cierre de canales la primera vez que se cierra uno y necesita un descriptor
+            //* para ello; se cierra un canal al arrancar para poder cerrar conexiones sin descriptores libres.
+            SocketChannel.open().close();
+            listeningChannel = ServerSocketChannel.open();
+            listeningChannel.bind(new InetSocketAddress(port), 1024);
+            listeningChannel.configureBlocking(false);
+            SelectionKey listeningKey = listeningChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("SERVER: Listening on port " + port);
 
-            //* Establecer un tiempo de espera de 300 segundos (5 minutos).
-            listeningSocket.setSoTimeout(300000);
+            //* Último momento en que el servidor tuvo alguna conexión abierta o actividad.
+            long lastActivity = System.currentTimeMillis();
+            long lastSweep = lastActivity;
+            //* Momento hasta el que no se aceptan conexiones tras un error (0 si se aceptan).
+            long acceptPausedUntil = 0;
             while (true) {
-                try{
-                    //* Esperar una conexión entrante.
-                    Socket clientSocket = listeningSocket.accept();
-                    InetAddress clientAddress = clientSocket.getInetAddress();
-                    int clientPort = clientSocket.getPort();
-
-                    //* Crear un canal de entrada para recibir datos del cliente.
-                    BufferedReader input = new BufferedReader(new InputStreamReader(clientSocket.getInputStream()));
-
-                    //* Crear un canal de salida para enviar datos al cliente.
-                    DataOutputStream output = new DataOutputStream(clientSocket.getOutputStream());
-
-                    //* Recibir el mensaje del cliente.
-                    String line = input.readLine();
-                    System.out.println("SERVER: Received "+ line + " from " + clientAddress + ":" + clientPort);
-
-                    //* Enviar la respuesta al cliente (eco).
-                    output.writeBytes(line + "\n");
-                    System.out.println("SERVER: Sending "+ line + " to " + clientAddress + ":" + clientPort);
-
-                    //* Cerrar los flujos y el socket del cliente.
-                    input.close();
-                    output.close();
-                    clientSocket.close();
-                }catch (Exception e) {
-                    //* Manejo de error del cliente.
-                    System.err.println("Error handling client: " + e.getMessage());
-                    e.printStackTrace();
+                //* Esperar a que alguna conexión esté lista, revisando periódicamente las inactivas.
+                //* select puede devolver 0 sin que haya pasado el tiempo, por lo que se mide el tiempo real.
+                selector.select(acceptPausedUntil != 0 ? ACCEPT_BACKOFF : SWEEP_INTERVAL);
+                long now = System.currentTimeMillis();
+                if (acceptPausedUntil != 0 && now >= acceptPausedUntil) {
+                    acceptPausedUntil = 0;
+                    listeningKey.interestOps(SelectionKey.OP_ACCEPT);
+                }
+                if (now - lastSweep >= SWEEP_INTERVAL) {
+                    lastSweep = now;
+                    closeIdle(selector, now);
+                }
+                //* Sin conexiones abiertas (sólo queda el canal de escucha) el servidor termina tras 300 segundos.
+                if (selector.keys().size() > 1 || !selector.selectedKeys().isEmpty()) {
+                    lastActivity = now;
+                } else if (now - lastActivity >= TIMEOUT) {
+                    throw new SocketTimeoutException();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key == listeningKey) {
+                        try {
+                            accept(key, selector);
+                        } catch (IOException e) {
+                            //* El canal de escucha se mantiene; sólo se deja de aceptar durante un momento.
+                            System.err.println("Error accepting connection: " + e.getMessage());
+                            key.interestOps(0);
+                            acceptPausedUntil = now + ACCEPT_BACKOFF;
+                        }
+                        continue;
+                    }
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        ((Connection) key.attachment()).lastActivity = now;
+                        if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        //* Manejo de error del cliente: se cierra únicamente su conexión.
+                        System.err.println("Error handling client: " + e.getMessage());
+                        close(key);
+                    }
                 }
             }
         } catch (SocketTimeoutException e) {
@@ -71,16 +131,131 @@ public class MonoThreadTcpServer {
             System.err.println("Error: " + e.getMessage());
             e.printStackTrace();
         } finally {
-            //* Cerrar el socket del servidor si está abierto.
-            if (listeningSocket != null && !listeningSocket.isClosed()) {
-                try{
-                    listeningSocket.close();
-                } catch (Exception e){
-                    //* Manejo de error cerrando el socket.
-                    System.err.println("Error closing socket: " + e.getMessage());
-                    e.printStackTrace();
+            //* Cerrar el selector y el canal del servidor si están abiertos.
+            try {
+                if (selector != null && selector.isOpen()) {
+                    for (SelectionKey key : selector.keys()) {
+                        key.channel().close();
+                    }
+                    selector.close();
                 }
+                if (listeningChannel != null && listeningChannel.isOpen()) {
+                    listeningChannel.close();
+                }
+            } catch (Exception e) {
+                //* Manejo de error cerrando el socket.
+                System.err.println("Error closing socket: " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /*
+     * Acepta todas las conexiones pendientes y las registra para lectura.
+     * Cada conexión recibe su propio estado (buffer y última actividad) como adjunto de la clave.
+     * @param key Clave del canal de escucha.
+     * @param selector Selector en el que se registran las nuevas conexiones.
+     * @throws IOException Si ocurre un error al aceptar la conexión.
+     */
+    private static void accept(SelectionKey key, Selector selector) throws IOException {
+        ServerSocketChannel server = (ServerSocketChannel) key.channel();
+        SocketChannel client;
+        while ((client = server.accept()) != null) {
+            try {
+                client.configureBlocking(false);
+                client.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                client.register(selector, SelectionKey.OP_READ, new Connection());
+            } catch (IOException e) {
+                //* Error de una conexión concreta: se cierra sólo esa conexión.
+                System.err.println("Error handling client: " + e.getMessage());
+                client.close();
+            }
+        }
+    }
+
+    /*
+     * Cierra las conexiones que llevan más de TIMEOUT milisegundos sin actividad.
+     * @param selector Selector con las conexiones registradas.
+     * @param now Momento actual en milisegundos.
+     */
+    private static void closeIdle(Selector selector, long now) {
+        for (SelectionKey key : selector.keys()) {
+            if (key.isValid() && key.attachment() instanceof Connection
+                    && now - ((Connection) key.attachment()).lastActivity >= TIMEOUT) {
+                System.err.println("Closing connection idle for 300 secs: " + ((SocketChannel) key.channel()).socket()
+                        .getRemoteSocketAddress());
+                close(key);
             }
         }
     }
+
+    /*
+     * Lee los datos disponibles de una conexión y los devuelve (eco).
+     * Si el canal no admite todos los bytes, se deja de leer y se espera a poder escribir,
+     * de forma que un cliente que no consume sus respuestas no acumula memoria en el servidor.
+     * @param key Clave de la conexión.
+     * @throws IOException Si ocurre un error de lectura o escritura.
+     */
+    private static void read(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        ByteBuffer buffer = ((Connection) key.attachment()).buffer;
+
+        int bytesRead = client.read(buffer);
+        if (bytesRead == -1) {
+            //* El cliente ha cerrado la conexión.
+            close(key);
+            return;
+        }
+        if (bytesRead == 0) {
+            return;
+        }
+
+        //* Enviar el contenido recibido de vuelta al cliente (eco).
+        buffer.flip();
+        client.write(buffer);
+        if (buffer.hasRemaining()) {
+            //* Escritura parcial: se completa cuando el canal admita más datos.
+            key.interestOps(SelectionKey.OP_WRITE);
+        } else {
+            buffer.clear();
+        }
+    }
+
+    /*
+     * Completa una escritura parcial pendiente y, al terminar, vuelve a leer de la conexión.
+     * @param key Clave de la conexión.
+     * @throws IOException Si ocurre un error de escritura.
+     */
+    private static void write(SelectionKey key) throws IOException {
+        SocketChannel client = (SocketChannel) key.channel();
+        ByteBuffer buffer = ((Connection) key.attachment()).buffer;
+
+        client.write(buffer);
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /*
+     * Cancela la clave y cierra el canal de la conexión.
+     * @param key Clave de la conexión.
+     */
+    private static void close(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            //* Manejo de error cerrando el socket.
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Estado de una conexión: su buffer y el momento de su última actividad.
+     */
+    private static class Connection {
+        final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long lastActivity = System.currentTimeMillis();
+    }
 }
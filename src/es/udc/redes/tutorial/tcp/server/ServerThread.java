@@ -8,10 +8,14 @@ import java.io.*;
 
 /*
  * Hilo de ejecución que maneja una conexión de un cliente en el servidor TCP.
- * Esta clase extiende Thread y se encarga de recibir un mensaje del cliente,
- * imprimirlo en consola y enviarlo de vuelta como respuesta (eco).
+ * Esta clase extiende Thread y se encarga de recibir los mensajes del cliente,
+ * imprimirlos en consola y enviarlos de vuelta como respuesta (eco) hasta que
+ * el cliente cierre la conexión.
  */
 public class ServerThread extends Thread {
+  //* Indica si se imprime cada mensaje (desactivar con -Dtcp.quiet=true para pruebas de carga).
+  private static final boolean VERBOSE = !Boolean.getBoolean("tcp.quiet");
+
   //* Socket asociado a la conexión con el cliente.
   private final Socket socket;
 
@@ -26,10 +30,10 @@ public class ServerThread extends Thread {
 
   /*
    * Método principal del hilo que maneja la comunicación con el cliente.
-   *    - Recibe un mensaje del cliente.
-   *    - Lo imprime en consola con la dirección y puerto del cliente.
-   *    - Envía el mismo mensaje de vuelta (eco).
-   *    - Cierra los flujos de entrada y salida.
+   *    - Recibe los mensajes del cliente, línea a línea.
+   *    - Los imprime en consola con la dirección y puerto del cliente.
+   *    - Envía cada mensaje de vuelta (eco).
+   *    - Cierra los flujos de entrada y salida cuando el cliente cierra la conexión.
    */
   public void run() {
     try {
@@ -39,15 +43,22 @@ public class ServerThread extends Thread {
 
       //* Crear los canales de entrada y salida
       BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-      DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
 
-      //* Leer el mensaje del cliente
-      String line = input.readLine();
-      System.out.println("SERVER: Received "+ line + " from " + address + ":" + port);
+      //* Leer los mensajes del cliente hasta que cierre la conexión
+      String line;
+      while ((line = input.readLine()) != null) {
+        if (VERBOSE) {
+          System.out.println("SERVER: Received "+ line + " from " + address + ":" + port);
+        }
 
-      //* Enviar el mensaje de vuelta (eco)
-      output.writeBytes(line +"\n");
-      System.out.println("SERVER: Sending "+ line + " to " + address + ":" + port);
+        //* Enviar el mensaje de vuelta (eco)
+        output.writeBytes(line +"\n");
+        output.flush();
+        if (VERBOSE) {
+          System.out.println("SERVER: Sending "+ line + " to " + address + ":" + port);
+        }
+      }
 
       //* Cerrar los flujos
       input.close();
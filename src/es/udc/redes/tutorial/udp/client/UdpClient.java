@@ -1,6 +1,9 @@
 package es.udc.redes.tutorial.udp.client;
 
 import java.net.*;
+import java.util.Arrays;
+
+import es.udc.redes.tutorial.udp.transfer.ReliableSender;
 
 /**
  * Implements an echo client using UDP
@@ -8,8 +11,22 @@ import java.net.*;
 public class UdpClient {
 
     public static void main(String argv[]) {
+        // Load generator mode: delegate to UdpLoadGenerator with the remaining arguments
+        if (argv.length > 0 && argv[0].equals("-load")) {
+            UdpLoadGenerator.main(Arrays.copyOfRange(argv, 1, argv.length));
+            return;
+        }
+        // Reliable transfer mode: send a file or directory with ReliableSender
+        if (argv.length > 0 && argv[0].equals("-send")) {
+            ReliableSender.main(Arrays.copyOfRange(argv, 1, argv.length));
+            return;
+        }
         if (argv.length != 3) {
-            System.err.println("Format: es.udc.redes.tutorial.udp.client.UdpClient <server_address> <port_number> <message>");
+            System.err.println("Format: es.udc.redes.tutorial.udp.client.UdpClient <server_address> <port_number> <message>\n"
+                    + "        es.udc.redes.tutorial.udp.client.UdpClient -load <server_address> <port_number> "
+                    + "<sockets> <rate_pps> <duration_secs> <payload_size>\n"
+                    + "        es.udc.redes.tutorial.udp.client.UdpClient -send <server_address> <port_number> "
+                    + "<file_or_directory> [loss_rate]");
             System.exit(-1);
         }
         DatagramSocket sDatagram = null;
@@ -0,0 +1,238 @@
+package es.udc.redes.tutorial.udp.client;
+
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load generator for the UDP echo servers.
+ * Sends sequence-numbered, timestamped datagrams at a fixed aggregate rate from
+ * several sockets and matches the echoes on a separate receiver thread per
+ * socket. Reports the achieved rate, RTT percentiles, loss, reordering and
+ * duplicates.
+ */
+public class UdpLoadGenerator {
+
+    // Sequence number (8 bytes) plus send timestamp (8 bytes)
+    private static final int HEADER_SIZE = 16;
+
+    // Time to wait for late replies once every datagram has been sent
+    private static final long DRAIN_MILLIS = 2000;
+
+    public static void main(String argv[]) {
+        if (argv.length != 6) {
+            System.err.println("Format: es.udc.redes.tutorial.udp.client.UdpLoadGenerator <server_address> <port_number> "
+                    + "<sockets> <rate_pps> <duration_secs> <payload_size>");
+            System.exit(-1);
+        }
+        Flow[] flows = null;
+        try {
+            InetAddress serverAddress = InetAddress.getByName(argv[0]);
+            int serverPort = Integer.parseInt(argv[1]);
+            int sockets = Integer.parseInt(argv[2]);
+            double rate = Double.parseDouble(argv[3]);
+            double duration = Double.parseDouble(argv[4]);
+            int payloadSize = Integer.parseInt(argv[5]);
+            if (sockets < 1 || rate <= 0 || duration <= 0) {
+                throw new IllegalArgumentException("sockets, rate and duration must be positive");
+            }
+            if (payloadSize < HEADER_SIZE || payloadSize > 65507) {
+                throw new IllegalArgumentException("payload size must be between " + HEADER_SIZE + " and 65507 bytes");
+            }
+            long perSocket = (long) Math.ceil(rate * duration / sockets);
+            if (perSocket > Integer.MAX_VALUE - 1) {
+                throw new IllegalArgumentException("too many datagrams per socket");
+            }
+            long intervalNanos = (long) (sockets * 1e9 / rate);
+
+            System.out.println("CLIENT: Sending " + perSocket * sockets + " datagrams of " + payloadSize
+                    + " bytes to " + serverAddress + ":" + serverPort + " from " + sockets + " sockets");
+
+            // Open and connect every socket before starting
+            InetSocketAddress server = new InetSocketAddress(serverAddress, serverPort);
+            flows = new Flow[sockets];
+            for (int i = 0; i < sockets; i++) {
+                flows[i] = new Flow(server, (int) perSocket, payloadSize);
+            }
+
+            long start = System.nanoTime();
+            for (Flow flow : flows) {
+                flow.start(start, intervalNanos);
+            }
+            long sendEnd = start;
+            for (Flow flow : flows) {
+                flow.sender.join();
+                sendEnd = Math.max(sendEnd, flow.sendEnd);
+            }
+
+            // Wait for the last replies and stop the receivers
+            Thread.sleep(DRAIN_MILLIS);
+            for (Flow flow : flows) {
+                flow.channel.close();
+                flow.receiver.join();
+            }
+
+            // Merge the results of every socket
+            long sent = 0, received = 0, reordered = 0, duplicates = 0, errors = 0;
+            long[] rtts = new long[(int) Math.min(Integer.MAX_VALUE - 8, perSocket * sockets)];
+            int count = 0;
+            for (Flow flow : flows) {
+                sent += flow.sent;
+                received += flow.received;
+                reordered += flow.reordered;
+                duplicates += flow.duplicates;
+                errors += flow.errors;
+                System.arraycopy(flow.rtts, 0, rtts, count, flow.received);
+                count += flow.received;
+            }
+            Arrays.sort(rtts, 0, count);
+            double sendSeconds = (sendEnd - start) / 1e9;
+            long lost = sent - received;
+
+            System.out.println(String.format(Locale.ROOT, "CLIENT: sent %d datagrams in %.3f s (%.1f pps, target %.1f pps)",
+                    sent, sendSeconds, sent / sendSeconds, rate));
+            System.out.println(String.format(Locale.ROOT, "CLIENT: received %d (%.1f pps), lost %d (%.3f%%), "
+                            + "reordered %d, duplicates %d, send errors %d",
+                    received, received / sendSeconds, lost, sent > 0 ? 100.0 * lost / sent : 0.0,
+                    reordered, duplicates, errors));
+            System.out.println("CLIENT: RTT p50=" + percentile(rtts, count, 50) + " us p90=" + percentile(rtts, count, 90)
+                    + " us p99=" + percentile(rtts, count, 99) + " us p99.9=" + percentile(rtts, count, 99.9)
+                    + " us max=" + (count > 0 ? rtts[count - 1] / 1000 : 0) + " us");
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            // Close sockets to release them
+            if (flows != null) {
+                for (Flow flow : flows) {
+                    if (flow != null) {
+                        try {
+                            flow.channel.close();
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the given percentile, in microseconds, of the first count sorted RTTs.
+     */
+    private static long percentile(long[] sorted, int count, double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return sorted[Math.max(0, Math.min(index, count - 1))] / 1000;
+    }
+
+    /**
+     * One socket of the load generator with its sender and receiver threads.
+     * Each counter is written by a single thread and read once both have finished.
+     */
+    private static class Flow {
+        final DatagramChannel channel;
+        final int datagrams;
+        final int payloadSize;
+        final long[] rtts;
+        final BitSet seen;
+        Thread sender;
+        Thread receiver;
+        long sendEnd;
+        int sent;
+        int errors;
+        int received;
+        int reordered;
+        int duplicates;
+
+        Flow(InetSocketAddress server, int datagrams, int payloadSize) throws IOException {
+            this.channel = DatagramChannel.open();
+            // A large receive buffer keeps bursts of replies from being dropped by this socket
+            this.channel.setOption(StandardSocketOptions.SO_RCVBUF, 4 * 1024 * 1024);
+            this.channel.connect(server);
+            this.datagrams = datagrams;
+            this.payloadSize = payloadSize;
+            this.rtts = new long[datagrams];
+            this.seen = new BitSet(datagrams);
+        }
+
+        void start(long start, long intervalNanos) {
+            receiver = new Thread(this::receive, "udp-receiver");
+            sender = new Thread(() -> send(start, intervalNanos), "udp-sender");
+            receiver.start();
+            sender.start();
+        }
+
+        /**
+         * Sends every datagram of this socket following a fixed schedule.
+         */
+        void send(long start, long intervalNanos) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(payloadSize);
+            for (int seq = 0; seq < datagrams; seq++) {
+                long scheduled = start + seq * intervalNanos;
+                long now;
+                while ((now = System.nanoTime()) < scheduled) {
+                    LockSupport.parkNanos(scheduled - now);
+                }
+                buffer.clear();
+                buffer.putLong(0, seq);
+                buffer.putLong(8, System.nanoTime());
+                try {
+                    channel.write(buffer);
+                    sent++;
+                } catch (ClosedChannelException e) {
+                    break;
+                } catch (IOException e) {
+                    errors++;
+                }
+            }
+            sendEnd = System.nanoTime();
+        }
+
+        /**
+         * Receives the echoes until the socket is closed, recording the RTT of
+         * each new sequence number and counting reordered and duplicated ones.
+         */
+        void receive() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(65507);
+            long highest = -1;
+            while (true) {
+                buffer.clear();
+                try {
+                    channel.read(buffer);
+                } catch (ClosedChannelException e) {
+                    return;
+                } catch (IOException e) {
+                    // e.g. ICMP port unreachable while the server is down
+                    continue;
+                }
+                long now = System.nanoTime();
+                if (buffer.position() < HEADER_SIZE) {
+                    continue;
+                }
+                long seq = buffer.getLong(0);
+                if (seq < 0 || seq >= datagrams) {
+                    continue;
+                }
+                if (seen.get((int) seq)) {
+                    duplicates++;
+                    continue;
+                }
+                seen.set((int) seq);
+                if (seq < highest) {
+                    reordered++;
+                } else {
+                    highest = seq;
+                }
+                rtts[received++] = now - buffer.getLong(8);
+            }
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package es.udc.redes.tutorial.udp.server;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/*
+ * Servidor UDP de eco de alto rendimiento.
+ * Varios hilos trabajadores reciben y devuelven datagramas sobre DatagramChannel,
+ * reutilizando cada uno su propio buffer directo y sin convertir el contenido a String,
+ * de modo que el eco es byte a byte y admite datagramas de cualquier tamaño (hasta 65507 bytes).
+ * Si el sistema admite SO_REUSEPORT cada trabajador tiene su propio socket en el mismo puerto
+ * y el núcleo reparte los clientes entre ellos; en caso contrario comparten un único canal.
+ * Periódicamente se imprimen los contadores de paquetes, bytes, errores de recepción y envíos
+ * fallidos. Ante errores de recepción repetidos el trabajador espera cada vez más antes de
+ * reintentar, y cada trabajador escribe como mucho un mensaje de error por intervalo de informe.
+ */
+public class MultiWorkerUdpServer {
+
+    //* Tamaño máximo de la carga útil de un datagrama UDP sobre IPv4.
+    private static final int MAX_DATAGRAM = 65507;
+
+    //* Tamaño solicitado para los buffers de recepción y envío del socket.
+    private static final int SOCKET_BUFFER = 4 * 1024 * 1024;
+
+    //* Intervalo entre informes de estadísticas, en segundos.
+    private static final int REPORT_INTERVAL = 5;
+
+    //* Espera máxima de un trabajador tras errores de recepción consecutivos, en milisegundos.
+    private static final long MAX_BACKOFF = 1000;
+
+    //* Contadores compartidos por todos los trabajadores.
+    private static final LongAdder packets = new LongAdder();
+    private static final LongAdder bytes = new LongAdder();
+    private static final LongAdder receiveErrors = new LongAdder();
+    private static final LongAdder failedSends = new LongAdder();
+
+    /*
+     * Método principal que inicia el servidor UDP multihilo.
+     * @param argv Argumentos de la línea de comandos. Se esperan dos parámetros:
+     *      1. Número de puerto en el que el servidor escuchará.
+     *      2. Número de hilos trabajadores.
+     */
+    public static void main(String argv[]) {
+        if (argv.length != 2) {
+            System.err.println("Format: es.udc.redes.tutorial.udp.server.MultiWorkerUdpServer <port_number> <workers>");
+            System.exit(-1);
+        }
+        List<DatagramChannel> channels = new ArrayList<>();
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        try {
+            int port = Integer.parseInt(argv[0]);
+            int workers = Integer.parseInt(argv[1]);
+            if (workers < 1) {
+                throw new IllegalArgumentException("The number of workers must be positive");
+            }
+
+            //* Crear un canal por trabajador si se admite SO_REUSEPORT o uno compartido en caso contrario.
+            boolean reusePort;
+            try (DatagramChannel probe = DatagramChannel.open()) {
+                reusePort = probe.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            }
+            int sockets = reusePort ? workers : 1;
+            for (int i = 0; i < sockets; i++) {
+                DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+                if (reusePort) {
+                    channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                channel.setOption(StandardSocketOptions.SO_RCVBUF, SOCKET_BUFFER);
+                channel.setOption(StandardSocketOptions.SO_SNDBUF, SOCKET_BUFFER);
+                channel.bind(new InetSocketAddress(port));
+                channels.add(channel);
+            }
+            System.out.println("SERVER: Listening on port " + port + " with " + workers + " workers ("
+                    + (reusePort ? "one socket per worker" : "shared socket") + ")");
+
+            //* Lanzar los hilos trabajadores.
+            List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < workers; i++) {
+                DatagramChannel channel = channels.get(i % sockets);
+                Thread worker = new Thread(() -> serve(channel), "udp-worker-" + (i + 1));
+                worker.start();
+                threads.add(worker);
+            }
+
+            //* Imprimir las estadísticas periódicamente y al finalizar.
+            long[] last = new long[2];
+            reporter.scheduleAtFixedRate(() -> report(last), REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+            Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                    System.out.println("SERVER: Total " + packets.sum() + " packets, " + bytes.sum()
+                            + " bytes, " + receiveErrors.sum() + " receive errors, " + failedSends.sum()
+                            + " failed sends")));
+
+            for (Thread worker : threads) {
+                worker.join();
+            }
+        } catch (Exception e) {
+            //* Manejo de error.
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            reporter.shutdownNow();
+
+            //* Cerrar los canales si están abiertos.
+            for (DatagramChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing socket: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /*
+     * Bucle de un trabajador: recibe datagramas y los devuelve sin modificaciones (eco).
+     * El buffer directo se reserva una única vez y se reutiliza para todos los datagramas.
+     * @param channel Canal por el que se reciben y envían los datagramas.
+     */
+    private static void serve(DatagramChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+        //* Espera tras el último error de recepción (0 si la última recepción fue correcta).
+        long backoff = 0;
+        //* Momento del último mensaje de error escrito y errores omitidos desde entonces.
+        long lastLog = 0;
+        long suppressed = 0;
+        while (true) {
+            SocketAddress client;
+            try {
+                buffer.clear();
+                client = channel.receive(buffer);
+                backoff = 0;
+            } catch (ClosedChannelException e) {
+                //* El canal se ha cerrado: el trabajador termina.
+                return;
+            } catch (IOException e) {
+                receiveErrors.increment();
+                long now = System.nanoTime();
+                if (lastLog == 0 || now - lastLog >= TimeUnit.SECONDS.toNanos(REPORT_INTERVAL)) {
+                    System.err.println("Error receiving datagram: " + e.getMessage()
+                            + (suppressed > 0 ? " (" + suppressed + " more errors not shown)" : ""));
+                    lastLog = now;
+                    suppressed = 0;
+                } else {
+                    suppressed++;
+                }
+                //* Espera creciente para no ocupar la CPU si el error persiste.
+                backoff = Math.min(MAX_BACKOFF, backoff == 0 ? 1 : backoff * 2);
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                continue;
+            }
+            buffer.flip();
+            packets.increment();
+            bytes.add(buffer.remaining());
+            try {
+                channel.send(buffer, client);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                //* El datagrama no se ha podido devolver.
+                failedSends.increment();
+            }
+        }
+    }
+
+    /*
+     * Imprime los contadores acumulados y la tasa desde el último informe.
+     * @param last Valores de los contadores en el informe anterior (se actualizan).
+     */
+    private static void report(long[] last) {
+        long p = packets.sum();
+        long b = bytes.sum();
+        System.out.println(String.format(Locale.ROOT,
+                "SERVER: %d packets (%.0f pps), %d bytes (%.2f MB/s), %d receive errors, %d failed sends",
+                p, (double) (p - last[0]) / REPORT_INTERVAL, b, (b - last[1]) / 1e6 / REPORT_INTERVAL,
+                receiveErrors.sum(), failedSends.sum()));
+        last[0] = p;
+        last[1] = b;
+    }
+}
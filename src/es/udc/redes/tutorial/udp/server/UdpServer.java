@@ -4,6 +4,9 @@ package es.udc.redes.tutorial.udp.server;
  * Librerías necesarias para la correcta implementación del programa.
  */
 import java.net.*;
+import java.util.Arrays;
+
+import es.udc.redes.tutorial.udp.transfer.ReliableReceiver;
 
 /*
  * Servidor UDP de eco.
@@ -11,14 +14,30 @@ import java.net.*;
  * recibe mensajes de los clientes y los devuelve sin modificaciones (eco).
  */
 public class UdpServer {
+
+    //* Tamaño máximo de la carga útil de un datagrama UDP sobre IPv4.
+    private static final int MAX_DATAGRAM = 65507;
+
     /*
      * Método principal que inicia el servidor UDP.
      * @param argv Argumentos de la línea de comandos. Se espera un parámetro:
      *      1. Número de puerto en el que el servidor escuchará conexiones.
      */
     public static void main(String argv[]) {
+        //* Modo de alto rendimiento: se delega en MultiWorkerUdpServer con el resto de argumentos.
+        if (argv.length > 0 && argv[0].equals("-fast")) {
+            MultiWorkerUdpServer.main(Arrays.copyOfRange(argv, 1, argv.length));
+            return;
+        }
+        //* Modo de transferencia fiable: se delega en ReliableReceiver con el resto de argumentos.
+        if (argv.length > 0 && argv[0].equals("-recv")) {
+            ReliableReceiver.main(Arrays.copyOfRange(argv, 1, argv.length));
+            return;
+        }
         if (argv.length != 1) {
-            System.err.println("Format: es.udc.redes.tutorial.udp.server.UdpServer <port_number>");
+            System.err.println("Format: es.udc.redes.tutorial.udp.server.UdpServer <port_number>\n"
+                    + "        es.udc.redes.tutorial.udp.server.UdpServer -fast <port_number> <workers>\n"
+                    + "        es.udc.redes.tutorial.udp.server.UdpServer -recv <port_number> <destination_directory> [loss_rate]");
             System.exit(-1);
         }
         DatagramSocket socket = null;
@@ -31,11 +50,13 @@ public class UdpServer {
             //* Establecer un tiempo de espera de 300 segundos (5 minutos).
             socket.setSoTimeout(300000);
 
-            while (true) {
-                byte[] input = new byte[1024];
+            //* Buffer y paquete de recepción, reutilizados para todos los datagramas.
+            byte[] input = new byte[MAX_DATAGRAM];
+            DatagramPacket packet = new DatagramPacket(input, input.length);
 
-                //* Crear un paquete para recibir datos.
-                DatagramPacket packet = new DatagramPacket(input, input.length);
+            while (true) {
+                //* Restaurar la longitud, que receive reduce al tamaño del último datagrama.
+                packet.setLength(input.length);
                 socket.receive(packet);
 
                 //* Convertir los datos recibidos en un mensaje de texto.
@@ -44,10 +65,8 @@ public class UdpServer {
                 int clientPort = packet.getPort();
                 System.out.println("SERVER: Received " + message + " from " + address + ":" + clientPort);
 
-                //* Preparar el mensaje de respuesta.
-                byte[] output = message.getBytes();
-                DatagramPacket response = new DatagramPacket(output, output.length, address, clientPort);
-                socket.send(response);
+                //* La respuesta reutiliza el mismo paquete: ya contiene los datos, la dirección y el puerto del cliente.
+                socket.send(packet);
                 System.out.println("SERVER: Sending " + message + " to " + address + ":" + clientPort);
 
             }
@@ -0,0 +1,59 @@
+package es.udc.redes.tutorial.udp.transfer;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.IOException;
+import java.net.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Socket UDP que descarta al azar una fracción de los datagramas enviados.
+ * Permite probar la transferencia fiable sobre la interfaz de loopback simulando pérdidas.
+ */
+class LossyDatagramSocket extends DatagramSocket {
+
+    //* Probabilidad de descartar cada datagrama (0 = sin pérdidas).
+    private final double lossRate;
+
+    //* Número de datagramas descartados.
+    private long dropped;
+
+    /*
+     * Crea un socket en un puerto libre.
+     * @param lossRate Probabilidad de pérdida de cada datagrama enviado.
+     */
+    LossyDatagramSocket(double lossRate) throws SocketException {
+        super();
+        this.lossRate = lossRate;
+    }
+
+    /*
+     * Crea un socket en el puerto indicado.
+     * @param port Puerto local.
+     * @param lossRate Probabilidad de pérdida de cada datagrama enviado.
+     */
+    LossyDatagramSocket(int port, double lossRate) throws SocketException {
+        super(port);
+        this.lossRate = lossRate;
+    }
+
+    /*
+     * Envía el datagrama salvo que se descarte según la probabilidad de pérdida.
+     */
+    @Override
+    public void send(DatagramPacket packet) throws IOException {
+        if (lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate) {
+            dropped++;
+            return;
+        }
+        super.send(packet);
+    }
+
+    /*
+     * @return Número de datagramas descartados de forma artificial.
+     */
+    long getDropped() {
+        return dropped;
+    }
+}
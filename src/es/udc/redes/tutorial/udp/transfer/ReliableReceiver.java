@@ -0,0 +1,361 @@
+package es.udc.redes.tutorial.udp.transfer;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+
+import static es.udc.redes.tutorial.udp.transfer.TransferProtocol.*;
+
+/*
+ * Receptor de la transferencia fiable de ficheros sobre UDP.
+ * Atiende varias transferencias a la vez, identificadas por su identificador. Cada bloque
+ * recibido se escribe directamente en su posición de un fichero temporal ".part" y se responde
+ * con un ACK acumulativo y selectivo que refleja la marca de tiempo del bloque, de modo que el
+ * emisor puede medir el RTT aunque el bloque sea una retransmisión.
+ * Al recibir FIN se compara el resumen SHA-256 del fichero reconstruido con el del emisor y,
+ * sólo si coinciden, el fichero temporal pasa a ocupar su nombre definitivo.
+ */
+public class ReliableReceiver {
+
+    //* Tiempo sin actividad tras el cual se descarta una transferencia (60 segundos).
+    private static final long SESSION_TIMEOUT = 60_000_000_000L;
+
+    private final LossyDatagramSocket socket;
+    private final Path root;
+    private final Map<Long, Session> sessions = new HashMap<>();
+
+    //* Buffers reutilizados para los datagramas de entrada y de salida.
+    private final byte[] in = new byte[MAX_PACKET];
+    private final DatagramPacket inPacket = new DatagramPacket(in, in.length);
+    private final byte[] out = new byte[ACK_SIZE];
+    private final ByteBuffer outBuffer = ByteBuffer.wrap(out);
+
+    /*
+     * Crea un receptor que guarda los ficheros bajo el directorio indicado.
+     * @param port Puerto en el que escucha.
+     * @param root Directorio de destino.
+     * @param lossRate Probabilidad de descartar cada datagrama enviado (pruebas).
+     */
+    public ReliableReceiver(int port, Path root, double lossRate) throws IOException {
+        this.root = root.toAbsolutePath().normalize();
+        Files.createDirectories(this.root);
+        this.socket = new LossyDatagramSocket(port, lossRate);
+        this.socket.setReceiveBufferSize(4 << 20);
+    }
+
+    /*
+     * Método principal que inicia el receptor.
+     * @param argv Argumentos de la línea de comandos:
+     *      1. Número de puerto en el que escuchará.
+     *      2. Directorio de destino de los ficheros.
+     *      3. (Opcional) Probabilidad de pérdida artificial entre 0 y 1.
+     */
+    public static void main(String[] argv) {
+        if (argv.length != 2 && argv.length != 3) {
+            System.err.println("Format: es.udc.redes.tutorial.udp.transfer.ReliableReceiver <port_number> "
+                    + "<destination_directory> [loss_rate]");
+            System.exit(-1);
+        }
+        ReliableReceiver receiver = null;
+        try {
+            int port = Integer.parseInt(argv[0]);
+            double lossRate = argv.length == 3 ? Double.parseDouble(argv[2]) : 0;
+            receiver = new ReliableReceiver(port, Paths.get(argv[1]), lossRate);
+            System.out.println("SERVER: Receiving files on port " + port + " into " + receiver.root);
+            receiver.serve();
+        } catch (Exception e) {
+            //* Manejo de error.
+            System.err.println("Error: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            //* Cerrar el socket si está abierto.
+            if (receiver != null && !receiver.socket.isClosed()) {
+                receiver.socket.close();
+            }
+        }
+    }
+
+    /*
+     * Bucle principal: recibe datagramas y los despacha según su tipo.
+     * @throws IOException Si ocurre un error en el socket.
+     */
+    public void serve() throws IOException {
+        socket.setSoTimeout(1000);
+        while (!socket.isClosed()) {
+            try {
+                inPacket.setLength(in.length);
+                socket.receive(inPacket);
+            } catch (SocketTimeoutException e) {
+                //* Sin tráfico: se aprovecha para descartar transferencias abandonadas.
+                expireSessions();
+                continue;
+            }
+            try {
+                handle(ByteBuffer.wrap(in, 0, inPacket.getLength()), inPacket.getSocketAddress());
+            } catch (IOException e) {
+                //* Un error en una transferencia no detiene al receptor.
+                System.err.println("Error: " + e.getMessage());
+            }
+            expireSessions();
+        }
+    }
+
+    /*
+     * Procesa un datagrama recibido.
+     * @param packet Contenido del datagrama.
+     * @param peer Dirección del emisor.
+     */
+    private void handle(ByteBuffer packet, SocketAddress peer) throws IOException {
+        if (packet.limit() < HEADER_SIZE) {
+            return;
+        }
+        byte type = packet.get(0);
+        long transferId = packet.getLong(1);
+        Session session = sessions.get(transferId);
+        if (session != null && !session.peer.equals(peer)) {
+            return;
+        }
+        if (type == META) {
+            if (session == null) {
+                session = open(packet, transferId, peer);
+                if (session == null) {
+                    reply(header(outBuffer, RESULT, transferId).put(STATUS_ERROR), peer);
+                    return;
+                }
+            }
+            session.lastActivity = System.nanoTime();
+            reply(header(outBuffer, META_ACK, transferId), session);
+        } else if (session != null && type == DATA && packet.limit() >= DATA_HEADER_SIZE) {
+            session.lastActivity = System.nanoTime();
+            session.write(packet);
+            sendAck(session, packet.getLong(HEADER_SIZE + 4));
+        } else if (session != null && type == FIN && packet.limit() >= HEADER_SIZE + DIGEST_SIZE) {
+            session.lastActivity = System.nanoTime();
+            if (session.isComplete()) {
+                byte[] expected = Arrays.copyOfRange(in, HEADER_SIZE, HEADER_SIZE + DIGEST_SIZE);
+                reply(header(outBuffer, RESULT, transferId).put(session.finish(expected)), session);
+            }
+        }
+    }
+
+    /*
+     * Crea una transferencia a partir de un datagrama META.
+     * @return La nueva transferencia, o null si la descripción no es válida.
+     */
+    private Session open(ByteBuffer packet, long transferId, SocketAddress peer) {
+        try {
+            packet.position(HEADER_SIZE);
+            long size = packet.getLong();
+            int chunkSize = packet.getInt();
+            int chunks = packet.getInt();
+            byte[] nameBytes = new byte[packet.getShort() & 0xFFFF];
+            packet.get(nameBytes);
+            String name = new String(nameBytes, StandardCharsets.UTF_8);
+
+            //* El nombre debe quedar dentro del directorio de destino.
+            Path target = root.resolve(name).normalize();
+            if (size < 0 || chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE || chunks != chunks(size, chunkSize)
+                    || name.isEmpty() || !target.startsWith(root) || target.equals(root)) {
+                System.err.println("Error: Invalid transfer request for " + name + " from " + peer);
+                return null;
+            }
+            Session session = new Session(transferId, peer, target, size, chunkSize, chunks);
+            sessions.put(transferId, session);
+            System.out.println("SERVER: Receiving " + name + " (" + size + " bytes) from " + peer);
+            return session;
+        } catch (RuntimeException | IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /*
+     * Envía un ACK acumulativo con el mapa de bloques recibidos fuera de orden.
+     * @param echo Marca de tiempo del bloque que se confirma.
+     */
+    private void sendAck(Session session, long echo) throws IOException {
+        ByteBuffer ack = header(outBuffer, ACK, session.transferId);
+        ack.putInt(session.cumAck);
+        ack.putLong(echo);
+        for (int i = 0; i < SACK_BYTES; i++) {
+            int bits = 0;
+            for (int bit = 0; bit < 8; bit++) {
+                if (session.received.get(session.cumAck + 1 + i * 8 + bit)) {
+                    bits |= 1 << bit;
+                }
+            }
+            ack.put((byte) bits);
+        }
+        reply(ack, session);
+    }
+
+    /*
+     * Envía el contenido escrito en el buffer de salida.
+     */
+    private void reply(ByteBuffer buffer, SocketAddress peer) throws IOException {
+        socket.send(new DatagramPacket(out, buffer.position(), peer));
+    }
+
+    /*
+     * Envía el contenido del buffer de salida al emisor de una transferencia, contando los
+     * datagramas descartados de forma artificial para esa transferencia.
+     */
+    private void reply(ByteBuffer buffer, Session session) throws IOException {
+        long dropped = socket.getDropped();
+        reply(buffer, session.peer);
+        session.dropped += socket.getDropped() - dropped;
+    }
+
+    /*
+     * Descarta las transferencias sin actividad, borrando los ficheros incompletos.
+     */
+    private void expireSessions() {
+        long now = System.nanoTime();
+        Iterator<Session> it = sessions.values().iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            if (now - session.lastActivity > SESSION_TIMEOUT) {
+                if (session.status < 0) {
+                    System.err.println("Error: Transfer of " + session.target + " abandoned");
+                }
+                session.discard();
+                it.remove();
+            }
+        }
+    }
+
+    /*
+     * Estado de una transferencia en curso.
+     */
+    private static class Session {
+        final long transferId;
+        final SocketAddress peer;
+        final Path target;
+        final Path partial;
+        final FileChannel channel;
+        final long size;
+        final int chunkSize;
+        final int chunks;
+        final BitSet received;
+        final long start = System.nanoTime();
+        int cumAck;
+        long dropped;
+        byte status = -1;
+        long lastActivity = System.nanoTime();
+
+        Session(long transferId, SocketAddress peer, Path target, long size, int chunkSize, int chunks)
+                throws IOException {
+            this.transferId = transferId;
+            this.peer = peer;
+            this.target = target;
+            this.partial = target.resolveSibling(target.getFileName() + ".part");
+            this.size = size;
+            this.chunkSize = chunkSize;
+            this.chunks = chunks;
+            this.received = new BitSet(chunks);
+            Files.createDirectories(target.getParent());
+            this.channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.READ, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /*
+         * Escribe un bloque en su posición si está dentro de la ventana y no se había recibido.
+         */
+        void write(ByteBuffer packet) throws IOException {
+            int seq = packet.getInt(HEADER_SIZE);
+            if (seq < cumAck || seq >= chunks || seq >= cumAck + MAX_WINDOW || received.get(seq)) {
+                return;
+            }
+            long offset = (long) seq * chunkSize;
+            int length = (int) Math.min(chunkSize, size - offset);
+            if (packet.limit() - DATA_HEADER_SIZE != length || status >= 0) {
+                return;
+            }
+            packet.position(DATA_HEADER_SIZE);
+            while (packet.hasRemaining()) {
+                channel.write(packet, offset + packet.position() - DATA_HEADER_SIZE);
+            }
+            received.set(seq);
+            while (cumAck < chunks && received.get(cumAck)) {
+                cumAck++;
+            }
+        }
+
+        boolean isComplete() {
+            return cumAck == chunks;
+        }
+
+        /*
+         * Verifica el fichero reconstruido y, si es correcto, lo mueve a su nombre definitivo.
+         * Sólo se verifica una vez; los FIN repetidos reciben el mismo resultado.
+         * @param expected Resumen SHA-256 enviado por el emisor.
+         * @return Estado final de la transferencia.
+         */
+        byte finish(byte[] expected) {
+            if (status >= 0) {
+                return status;
+            }
+            try {
+                MessageDigest digest = ReliableSender.sha256();
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+                long position = 0;
+                int read;
+                while ((read = channel.read(buffer, position)) > 0) {
+                    position += read;
+                    buffer.flip();
+                    digest.update(buffer);
+                    buffer.clear();
+                }
+                channel.close();
+                if (MessageDigest.isEqual(digest.digest(), expected)) {
+                    Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING);
+                    status = STATUS_OK;
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.println("SERVER: Received " + target + " (" + size + " bytes, "
+                            + String.format(Locale.ROOT, "%.2f", size / seconds / 1e6) + " MB/s, "
+                            + dropped + " datagrams dropped), checksum verified");
+                } else {
+                    Files.deleteIfExists(partial);
+                    status = STATUS_CORRUPT;
+                    System.err.println("Error: Checksum mismatch for " + target);
+                }
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                discard();
+                status = STATUS_ERROR;
+            }
+            return status;
+        }
+
+        /*
+         * Cierra el fichero temporal y lo borra si la transferencia no ha terminado bien.
+         */
+        void discard() {
+            try {
+                channel.close();
+                if (status != STATUS_OK) {
+                    Files.deleteIfExists(partial);
+                }
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,401 @@
+package es.udc.redes.tutorial.udp.transfer;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static es.udc.redes.tutorial.udp.transfer.TransferProtocol.*;
+
+/*
+ * Emisor de la transferencia fiable de ficheros sobre UDP.
+ * Divide cada fichero en bloques y los envía con una ventana deslizante de repetición selectiva:
+ *      - Cada bloque tiene su propio temporizador y sólo se retransmiten los bloques no confirmados.
+ *      - Los ACK acumulativos y selectivos del receptor marcan los bloques confirmados.
+ *      - El tiempo de retransmisión (RTO) se calcula a partir del RTT medido con las marcas de
+ *        tiempo que el receptor refleja en cada ACK (RFC 6298).
+ *      - La ventana de congestión crece con cada confirmación y se reduce ante pérdidas
+ *        (a la mitad con tres ACK duplicados y a un bloque tras un vencimiento del RTO).
+ * Al terminar envía el resumen SHA-256 del fichero para que el receptor compruebe su integridad.
+ * Si el origen es un directorio se envían todos sus ficheros con su ruta relativa.
+ */
+public class ReliableSender {
+
+    //* Límites del tiempo de retransmisión, en nanosegundos.
+    private static final long INITIAL_RTO = 200_000_000L;
+    private static final long MIN_RTO = 10_000_000L;
+    private static final long MAX_RTO = 2_000_000_000L;
+
+    //* Ventana de congestión inicial, en bloques.
+    private static final double INITIAL_CWND = 4;
+
+    //* Número máximo de intentos de un intercambio de control o de retransmisiones de un bloque.
+    private static final int MAX_RETRIES = 20;
+
+    //* Número de ACK duplicados que provocan una retransmisión rápida.
+    private static final int DUP_ACK_THRESHOLD = 3;
+
+    private final LossyDatagramSocket socket;
+    private final InetSocketAddress receiver;
+
+    //* Estimación del RTT (en nanosegundos).
+    private double srtt = -1;
+    private double rttvar;
+    private long rto = INITIAL_RTO;
+
+    //* Buffers reutilizados para los datagramas de salida y de entrada.
+    private final byte[] in = new byte[MAX_PACKET];
+    private final DatagramPacket inPacket = new DatagramPacket(in, in.length);
+
+    /*
+     * Crea un emisor hacia el receptor indicado.
+     * @param receiver Dirección y puerto del receptor.
+     * @param lossRate Probabilidad de descartar cada datagrama enviado (pruebas).
+     */
+    public ReliableSender(InetSocketAddress receiver, double lossRate) throws SocketException {
+        this.socket = new LossyDatagramSocket(lossRate);
+        this.socket.setReceiveBufferSize(1 << 20);
+        this.socket.setSendBufferSize(1 << 20);
+        this.receiver = receiver;
+    }
+
+    /*
+     * Método principal que envía un fichero o un directorio completo.
+     * @param argv Argumentos de la línea de comandos:
+     *      1. Dirección del receptor.
+     *      2. Puerto del receptor.
+     *      3. Fichero o directorio a enviar.
+     *      4. (Opcional) Probabilidad de pérdida artificial entre 0 y 1.
+     */
+    public static void main(String[] argv) {
+        if (argv.length != 3 && argv.length != 4) {
+            System.err.println("Format: es.udc.redes.tutorial.udp.transfer.ReliableSender <server_address> <port_number> "
+                    + "<file_or_directory> [loss_rate]");
+            System.exit(-1);
+        }
+        ReliableSender sender = null;
+        try {
+            InetSocketAddress receiver = new InetSocketAddress(InetAddress.getByName(argv[0]), Integer.parseInt(argv[1]));
+            Path source = Paths.get(argv[2]);
+            double lossRate = argv.length == 4 ? Double.parseDouble(argv[3]) : 0;
+            sender = new ReliableSender(receiver, lossRate);
+
+            //* Un directorio se envía fichero a fichero, conservando la ruta relativa.
+            if (Files.isDirectory(source)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(source)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    String name = source.relativize(file).toString().replace(source.getFileSystem().getSeparator(), "/");
+                    sender.send(file, name);
+                }
+            } else {
+                sender.send(source, source.getFileName().toString());
+            }
+        } catch (Exception e) {
+            //* Manejo de error.
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+        } finally {
+            if (sender != null) {
+                sender.socket.close();
+            }
+        }
+    }
+
+    /*
+     * Envía un fichero al receptor y espera la confirmación de su integridad.
+     * @param file Fichero a enviar.
+     * @param name Nombre (ruta relativa) con el que se guardará en el receptor.
+     * @throws IOException Si el receptor no responde o rechaza el fichero.
+     */
+    public void send(Path file, String name) throws IOException {
+        long transferId = ThreadLocalRandom.current().nextLong();
+        long size = Files.size(file);
+        long chunks = chunks(size, CHUNK_SIZE);
+        if (chunks > Integer.MAX_VALUE) {
+            throw new IOException("File too large: " + file);
+        }
+        int total = (int) chunks;
+        long start = System.nanoTime();
+        long dropped = socket.getDropped();
+
+        //* 1. Anuncio del fichero.
+        exchange(meta(transferId, size, CHUNK_SIZE, total, name), transferId, META_ACK);
+
+        //* 2. Envío de los bloques con la ventana deslizante.
+        MessageDigest digest = sha256();
+        Stats stats;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            stats = sendChunks(channel, transferId, size, total, digest);
+        }
+
+        //* 3. Cierre con el resumen del fichero y espera del resultado de la verificación.
+        ByteBuffer fin = header(ByteBuffer.allocate(HEADER_SIZE + DIGEST_SIZE), FIN, transferId);
+        fin.put(digest.digest());
+        ByteBuffer result = exchange(fin.array(), transferId, RESULT);
+        byte status = result.get(HEADER_SIZE);
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format(Locale.ROOT,
+                "CLIENT: %s %d bytes in %.3f s (%.2f MB/s), %d retransmissions, %d timeouts, %d datagrams dropped, "
+                        + "srtt %.3f ms, %s",
+                name, size, seconds, size / seconds / 1e6, stats.retransmissions, stats.timeouts,
+                socket.getDropped() - dropped,
+                srtt / 1e6, status == STATUS_OK ? "verified" : "REJECTED"));
+        if (status != STATUS_OK) {
+            throw new IOException("Receiver rejected " + name
+                    + (status == STATUS_CORRUPT ? ": checksum mismatch" : ": write error"));
+        }
+    }
+
+    /*
+     * Envía todos los bloques del fichero hasta que estén confirmados.
+     * Los bloques en vuelo se guardan en anillos de MAX_WINDOW posiciones indexados por número de bloque.
+     * @return Estadísticas de retransmisiones.
+     */
+    private Stats sendChunks(FileChannel channel, long transferId, long size, int total,
+                             MessageDigest digest) throws IOException {
+        Stats stats = new Stats();
+        long[] sentAt = new long[MAX_WINDOW];
+        int[] retries = new int[MAX_WINDOW];
+        boolean[] acked = new boolean[MAX_WINDOW];
+        byte[] out = new byte[DATA_HEADER_SIZE + CHUNK_SIZE];
+        ByteBuffer outBuffer = ByteBuffer.wrap(out);
+        DatagramPacket outPacket = new DatagramPacket(out, out.length, receiver);
+
+        int base = 0;
+        int next = 0;
+        double cwnd = INITIAL_CWND;
+        double ssthresh = MAX_WINDOW;
+        int lastCumAck = 0;
+        int dupAcks = 0;
+        long lastBackoff = 0;
+
+        while (base < total) {
+            //* Enviar bloques nuevos mientras lo permita la ventana de congestión.
+            while (next < total && next < base + Math.min((int) cwnd, MAX_WINDOW)) {
+                sendChunk(channel, outBuffer, outPacket, transferId, next, size, digest);
+                int slot = next % MAX_WINDOW;
+                sentAt[slot] = System.nanoTime();
+                retries[slot] = 0;
+                next++;
+            }
+
+            //* Retransmitir los bloques cuyo temporizador ha vencido.
+            long now = System.nanoTime();
+            long earliest = Long.MAX_VALUE;
+            for (int seq = base; seq < next; seq++) {
+                int slot = seq % MAX_WINDOW;
+                if (acked[slot]) {
+                    continue;
+                }
+                if (now - sentAt[slot] >= rto) {
+                    if (++retries[slot] > MAX_RETRIES) {
+                        throw new IOException("No response from receiver " + receiver);
+                    }
+                    //* Un único retroceso por cada episodio de pérdida.
+                    if (now - lastBackoff >= rto) {
+                        ssthresh = Math.max(cwnd / 2, 2);
+                        cwnd = 1;
+                        rto = Math.min(rto * 2, MAX_RTO);
+                        lastBackoff = now;
+                        stats.timeouts++;
+                    }
+                    sendChunk(channel, outBuffer, outPacket, transferId, seq, size, null);
+                    sentAt[slot] = now;
+                    stats.retransmissions++;
+                }
+                earliest = Math.min(earliest, sentAt[slot] + rto);
+            }
+
+            //* Esperar un ACK como mucho hasta el próximo vencimiento.
+            ByteBuffer ack = receive(transferId, ACK, earliest == Long.MAX_VALUE ? rto : earliest - now);
+            if (ack != null && ack.get(0) == RESULT) {
+                throw new IOException("Receiver " + receiver + " aborted the transfer");
+            }
+            if (ack == null || ack.limit() < ACK_SIZE) {
+                continue;
+            }
+            now = System.nanoTime();
+            int cumAck = ack.getInt(HEADER_SIZE);
+            long echo = ack.getLong(HEADER_SIZE + 4);
+            updateRto(now - echo);
+
+            //* Marcar los bloques confirmados de forma acumulativa y selectiva.
+            int newlyAcked = 0;
+            for (int seq = base; seq < Math.min(cumAck, next); seq++) {
+                int slot = seq % MAX_WINDOW;
+                if (!acked[slot]) {
+                    acked[slot] = true;
+                    newlyAcked++;
+                }
+            }
+            for (int bit = 0; bit < MAX_WINDOW; bit++) {
+                int seq = cumAck + 1 + bit;
+                if (seq >= next) {
+                    break;
+                }
+                if (seq >= base && (ack.get(HEADER_SIZE + 12 + bit / 8) & (1 << (bit % 8))) != 0) {
+                    int slot = seq % MAX_WINDOW;
+                    if (!acked[slot]) {
+                        acked[slot] = true;
+                        newlyAcked++;
+                    }
+                }
+            }
+            while (base < next && acked[base % MAX_WINDOW]) {
+                acked[base % MAX_WINDOW] = false;
+                base++;
+            }
+
+            //* Crecimiento de la ventana: exponencial hasta ssthresh y lineal después.
+            for (int i = 0; i < newlyAcked; i++) {
+                cwnd += cwnd < ssthresh ? 1 : 1 / cwnd;
+            }
+            cwnd = Math.min(cwnd, MAX_WINDOW);
+
+            //* Retransmisión rápida del primer bloque que falta tras varios ACK duplicados.
+            if (cumAck > lastCumAck) {
+                lastCumAck = cumAck;
+                dupAcks = 0;
+            } else if (cumAck < next && ++dupAcks == DUP_ACK_THRESHOLD && cumAck >= base) {
+                ssthresh = Math.max(cwnd / 2, 2);
+                cwnd = ssthresh;
+                sendChunk(channel, outBuffer, outPacket, transferId, cumAck, size, null);
+                sentAt[cumAck % MAX_WINDOW] = now;
+                stats.retransmissions++;
+            }
+        }
+        return stats;
+    }
+
+    /*
+     * Lee un bloque del fichero y lo envía como datagrama DATA.
+     * @param digest Resumen que se actualiza con el bloque (sólo en el primer envío) o null.
+     */
+    private void sendChunk(FileChannel channel, ByteBuffer out, DatagramPacket packet, long transferId,
+                           int seq, long size, MessageDigest digest) throws IOException {
+        long offset = (long) seq * CHUNK_SIZE;
+        int length = (int) Math.min(CHUNK_SIZE, size - offset);
+        header(out, DATA, transferId);
+        out.putInt(seq);
+        out.putLong(System.nanoTime());
+        out.limit(DATA_HEADER_SIZE + length);
+        while (out.hasRemaining()) {
+            if (channel.read(out, offset + out.position() - DATA_HEADER_SIZE) < 0) {
+                throw new IOException("File changed while sending");
+            }
+        }
+        if (digest != null) {
+            digest.update(out.array(), DATA_HEADER_SIZE, length);
+        }
+        packet.setLength(DATA_HEADER_SIZE + length);
+        socket.send(packet);
+    }
+
+    /*
+     * Envía un datagrama de control hasta recibir la respuesta esperada, duplicando el RTO tras cada intento.
+     * @return La respuesta recibida.
+     * @throws IOException Si se agotan los intentos.
+     */
+    private ByteBuffer exchange(byte[] request, long transferId, byte expected) throws IOException {
+        DatagramPacket packet = new DatagramPacket(request, request.length, receiver);
+        long timeout = rto;
+        for (int attempt = 0; attempt < MAX_RETRIES; attempt++) {
+            long sent = System.nanoTime();
+            socket.send(packet);
+            long deadline = sent + timeout;
+            long now;
+            while ((now = System.nanoTime()) < deadline) {
+                ByteBuffer reply = receive(transferId, expected, deadline - now);
+                if (reply != null && reply.get(0) != expected) {
+                    throw new IOException("Receiver " + receiver + " refused the transfer");
+                }
+                if (reply != null) {
+                    //* Sólo se mide el RTT si no ha habido retransmisión (algoritmo de Karn).
+                    if (attempt == 0) {
+                        updateRto(System.nanoTime() - sent);
+                    }
+                    return reply;
+                }
+            }
+            timeout = Math.min(timeout * 2, MAX_RTO);
+        }
+        throw new IOException("No response from receiver " + receiver);
+    }
+
+    /*
+     * Espera un datagrama del tipo y la transferencia indicados, o un RESULT con el que el
+     * receptor rechaza o da por terminada la transferencia.
+     * @param timeoutNanos Tiempo máximo de espera.
+     * @return El contenido del datagrama, o null si vence el plazo o llega otro datagrama.
+     */
+    private ByteBuffer receive(long transferId, byte expected, long timeoutNanos) throws IOException {
+        socket.setSoTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE, (timeoutNanos + 999_999) / 1_000_000)));
+        try {
+            inPacket.setLength(in.length);
+            socket.receive(inPacket);
+        } catch (SocketTimeoutException e) {
+            return null;
+        }
+        ByteBuffer reply = ByteBuffer.wrap(in, 0, inPacket.getLength());
+        if (reply.limit() < HEADER_SIZE || (reply.get(0) != expected && reply.get(0) != RESULT)
+                || reply.getLong(1) != transferId) {
+            return null;
+        }
+        return reply;
+    }
+
+    /*
+     * Actualiza SRTT, RTTVAR y RTO con una nueva muestra de RTT (RFC 6298).
+     * @param sample RTT medido, en nanosegundos.
+     */
+    private void updateRto(long sample) {
+        if (sample <= 0) {
+            return;
+        }
+        if (srtt < 0) {
+            srtt = sample;
+            rttvar = sample / 2.0;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - sample);
+            srtt = 0.875 * srtt + 0.125 * sample;
+        }
+        rto = Math.max(MIN_RTO, Math.min(MAX_RTO, (long) (srtt + 4 * rttvar)));
+    }
+
+    /*
+     * @return Un resumen SHA-256 nuevo.
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+     * Contadores de una transferencia.
+     */
+    private static class Stats {
+        long retransmissions;
+        long timeouts;
+    }
+}
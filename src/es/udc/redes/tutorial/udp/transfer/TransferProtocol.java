@@ -0,0 +1,89 @@
+package es.udc.redes.tutorial.udp.transfer;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Formato de los datagramas del protocolo de transferencia fiable sobre UDP.
+ * Todos los datagramas empiezan por una cabecera común de 9 bytes:
+ *      - tipo (1 byte)
+ *      - identificador de la transferencia (8 bytes)
+ * seguida de los campos propios de cada tipo:
+ *      META      tamaño (8), tamaño de bloque (4), número de bloques (4), longitud del nombre (2), nombre UTF-8
+ *      META_ACK  (sin campos)
+ *      DATA      número de bloque (4), marca de tiempo del emisor (8), datos
+ *      ACK       ACK acumulativo (4), marca de tiempo reflejada (8), mapa de ACK selectivos (SACK_BYTES)
+ *      FIN       resumen SHA-256 del fichero (32)
+ *      RESULT    estado (1)
+ * El ACK acumulativo es el primer bloque que falta; el bit i del mapa selectivo indica que
+ * se ha recibido el bloque (ACK acumulativo + 1 + i).
+ */
+final class TransferProtocol {
+
+    //* Tipos de datagrama.
+    static final byte META = 1;
+    static final byte META_ACK = 2;
+    static final byte DATA = 3;
+    static final byte ACK = 4;
+    static final byte FIN = 5;
+    static final byte RESULT = 6;
+
+    //* Estados finales de una transferencia.
+    static final byte STATUS_OK = 0;
+    static final byte STATUS_CORRUPT = 1;
+    static final byte STATUS_ERROR = 2;
+
+    //* Tamaños de cabecera y límites del protocolo.
+    static final int HEADER_SIZE = 9;
+    static final int DATA_HEADER_SIZE = HEADER_SIZE + 4 + 8;
+    static final int CHUNK_SIZE = 1400;
+    static final int MAX_CHUNK_SIZE = 65507 - DATA_HEADER_SIZE;
+    static final int MAX_WINDOW = 256;
+    static final int SACK_BYTES = MAX_WINDOW / 8;
+    static final int ACK_SIZE = HEADER_SIZE + 4 + 8 + SACK_BYTES;
+    static final int DIGEST_SIZE = 32;
+    static final int MAX_PACKET = 65507;
+
+    private TransferProtocol() {
+    }
+
+    /*
+     * Escribe la cabecera común al principio del buffer.
+     * @param buffer Buffer de salida (se reinicia).
+     * @param type Tipo de datagrama.
+     * @param transferId Identificador de la transferencia.
+     * @return El propio buffer, posicionado tras la cabecera.
+     */
+    static ByteBuffer header(ByteBuffer buffer, byte type, long transferId) {
+        buffer.clear();
+        buffer.put(type);
+        buffer.putLong(transferId);
+        return buffer;
+    }
+
+    /*
+     * Construye un datagrama META con la descripción del fichero.
+     * @return Contenido del datagrama.
+     */
+    static byte[] meta(long transferId, long size, int chunkSize, int chunks, String name) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 8 + 4 + 4 + 2 + nameBytes.length);
+        header(buffer, META, transferId);
+        buffer.putLong(size);
+        buffer.putInt(chunkSize);
+        buffer.putInt(chunks);
+        buffer.putShort((short) nameBytes.length);
+        buffer.put(nameBytes);
+        return buffer.array();
+    }
+
+    /*
+     * Calcula el número de bloques en que se divide un fichero.
+     */
+    static long chunks(long size, int chunkSize) {
+        return (size + chunkSize - 1) / chunkSize;
+    }
+}
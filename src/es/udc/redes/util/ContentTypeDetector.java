@@ -0,0 +1,232 @@
+package es.udc.redes.util;
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Detector del tipo de contenido (MIME) de un archivo, compartido por Info, Copy y el servidor web.
+ * El tipo se obtiene primero de una tabla de extensiones construida al cargar la clase. Si la
+ * extensión no se conoce, se leen los primeros bytes del archivo y se buscan las firmas de los
+ * formatos habituales (GIF, PNG, ICO, JPEG, HTML...) o, en su defecto, se decide si es texto por
+ * la proporción de bytes no imprimibles. Los resultados de este análisis se guardan por archivo
+ * junto con su tamaño y fecha de modificación, de modo que sólo se repite si el archivo cambia.
+ */
+public final class ContentTypeDetector {
+
+    //* Tipos devueltos cuando no se reconoce el formato.
+    public static final String TEXT_PLAIN = "text/plain";
+    public static final String OCTET_STREAM = "application/octet-stream";
+
+    //* Número de bytes analizados al principio del archivo.
+    private static final int PREFIX_SIZE = 512;
+
+    //* Número máximo de archivos guardados en la caché; al superarse se vacía.
+    private static final int CACHE_CAPACITY = 4096;
+
+    //* Tabla de extensiones (en minúsculas) y sus tipos.
+    private static final Map<String, String> EXTENSIONS = new HashMap<>();
+
+    static {
+        String[][] types = {
+                {"html", "text/html"}, {"htm", "text/html"}, {"txt", TEXT_PLAIN}, {"css", "text/css"},
+                {"csv", "text/csv"}, {"md", "text/markdown"}, {"java", "text/x-java"},
+                {"js", "text/javascript"}, {"json", "application/json"}, {"xml", "application/xml"},
+                {"gif", "image/gif"}, {"png", "image/png"}, {"jpg", "image/jpeg"}, {"jpeg", "image/jpeg"},
+                {"ico", "image/x-icon"}, {"bmp", "image/bmp"}, {"svg", "image/svg+xml"}, {"webp", "image/webp"},
+                {"pdf", "application/pdf"}, {"zip", "application/zip"}, {"gz", "application/gzip"},
+                {"jar", "application/java-archive"}, {"class", "application/java-vm"},
+                {"doc", "application/msword"},
+                {"docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document"},
+                {"odt", "application/vnd.oasis.opendocument.text"},
+                {"mp3", "audio/mpeg"}, {"wav", "audio/wav"}, {"mp4", "video/mp4"},
+        };
+        for (String[] type : types) {
+            EXTENSIONS.put(type[0], type[1]);
+        }
+    }
+
+    //* Resultados del análisis del contenido, por archivo.
+    private static final Map<Path, Entry> CACHE = new ConcurrentHashMap<>();
+
+    private ContentTypeDetector() {
+    }
+
+    /*
+     * Obtiene el tipo de un archivo a partir de su extensión.
+     * @param extension Extensión sin el punto (no distingue mayúsculas y minúsculas).
+     * @return El tipo, o null si la extensión no está en la tabla.
+     */
+    public static String forExtension(String extension) {
+        return EXTENSIONS.get(extension.toLowerCase(Locale.ROOT));
+    }
+
+    /*
+     * Obtiene el tipo de un archivo: por su extensión o, si no se conoce, analizando su contenido.
+     * @param file Archivo a analizar.
+     * @return El tipo del archivo; TEXT_PLAIN u OCTET_STREAM si no se reconoce el formato.
+     * @throws IOException Si ocurre un error al leer el archivo.
+     */
+    public static String detect(Path file) throws IOException {
+        Path name = file.getFileName();
+        if (name != null) {
+            String type = forExtension(extensionOf(name.toString()));
+            if (type != null) {
+                return type;
+            }
+        }
+        return detectContent(file);
+    }
+
+    /*
+     * Obtiene el tipo de un archivo analizando únicamente su contenido, sin tener en cuenta la extensión.
+     * @param file Archivo a analizar.
+     * @return El tipo del archivo; TEXT_PLAIN u OCTET_STREAM si no se reconoce el formato.
+     * @throws IOException Si ocurre un error al leer el archivo.
+     */
+    public static String detectContent(Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Path key = file.toAbsolutePath().normalize();
+
+        //* Si el archivo no ha cambiado desde el último análisis se reutiliza el resultado.
+        Entry known = CACHE.get(key);
+        if (known != null && known.size == size && known.modified == modified) {
+            return known.type;
+        }
+
+        byte[] prefix = new byte[PREFIX_SIZE];
+        int length = 0;
+        try (InputStream input = Files.newInputStream(file)) {
+            int bytesRead;
+            while (length < prefix.length && (bytesRead = input.read(prefix, length, prefix.length - length)) != -1) {
+                length += bytesRead;
+            }
+        }
+        String type = sniff(prefix, length);
+
+        if (CACHE.size() >= CACHE_CAPACITY) {
+            CACHE.clear();
+        }
+        CACHE.put(key, new Entry(size, modified, type));
+        return type;
+    }
+
+    /*
+     * @return true si el tipo corresponde a un contenido de texto.
+     */
+    public static boolean isText(String type) {
+        return type.startsWith("text/") || type.equals("application/json") || type.equals("application/xml")
+                || type.equals("image/svg+xml");
+    }
+
+    /*
+     * Determina el tipo a partir de los primeros bytes del archivo.
+     * @param prefix Bytes leídos.
+     * @param length Número de bytes válidos.
+     */
+    private static String sniff(byte[] prefix, int length) {
+        if (startsWith(prefix, length, 'G', 'I', 'F', '8') && length >= 6 && prefix[5] == 'a'
+                && (prefix[4] == '7' || prefix[4] == '9')) {
+            return "image/gif";
+        }
+        if (startsWith(prefix, length, 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n')) {
+            return "image/png";
+        }
+        if (startsWith(prefix, length, 0xFF, 0xD8, 0xFF)) {
+            return "image/jpeg";
+        }
+        if (startsWith(prefix, length, 0, 0, 1, 0) && length >= 6 && (prefix[4] != 0 || prefix[5] != 0)) {
+            return "image/x-icon";
+        }
+        if (startsWith(prefix, length, '%', 'P', 'D', 'F', '-')) {
+            return "application/pdf";
+        }
+        if (startsWith(prefix, length, 'P', 'K', 3, 4)) {
+            return "application/zip";
+        }
+        if (startsWith(prefix, length, 0x1F, 0x8B)) {
+            return "application/gzip";
+        }
+        if (!isTextContent(prefix, length)) {
+            return OCTET_STREAM;
+        }
+        return isHtml(prefix, length) ? "text/html" : TEXT_PLAIN;
+    }
+
+    /*
+     * Un contenido se considera texto si como mucho el 5% de sus bytes no son imprimibles.
+     */
+    private static boolean isTextContent(byte[] prefix, int length) {
+        int nonTextBytes = 0;
+        for (int i = 0; i < length; i++) {
+            //* pasa el byte a entero sin signo.
+            int b = prefix[i] & 0xFF;
+            if ((b < 32 || b > 126) && b != 9 && b != 10 && b != 13) {
+                nonTextBytes++;
+            }
+        }
+        return nonTextBytes <= length * 0.05;
+    }
+
+    /*
+     * Un texto se considera HTML si, tras los espacios iniciales, empieza por <!DOCTYPE HTML o <HTML.
+     */
+    private static boolean isHtml(byte[] prefix, int length) {
+        int start = 0;
+        while (start < length && Character.isWhitespace(prefix[start])) {
+            start++;
+        }
+        String head = new String(prefix, start, Math.min(length - start, 14), StandardCharsets.US_ASCII)
+                .toLowerCase(Locale.ROOT);
+        return head.startsWith("<!doctype html") || head.startsWith("<html");
+    }
+
+    /*
+     * Comprueba si los bytes empiezan por la firma indicada.
+     */
+    private static boolean startsWith(byte[] prefix, int length, int... signature) {
+        if (length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if ((prefix[i] & 0xFF) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * @return Extensión de un nombre de archivo sin el punto, o cadena vacía si no tiene.
+     */
+    private static String extensionOf(String name) {
+        int lastPoint = name.lastIndexOf('.');
+        return lastPoint != -1 && lastPoint < name.length() - 1 ? name.substring(lastPoint + 1) : "";
+    }
+
+    /*
+     * Resultado del análisis de un archivo en una versión concreta.
+     */
+    private static class Entry {
+        final long size;
+        final long modified;
+        final String type;
+
+        Entry(long size, long modified, String type) {
+            this.size = size;
+            this.modified = modified;
+            this.type = type;
+        }
+    }
+}
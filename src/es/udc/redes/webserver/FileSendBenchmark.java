@@ -0,0 +1,311 @@
+package es.udc.redes.webserver;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Compara el envío de archivos por un socket con lecturas bloqueantes, como el bucle de ServerThread
+ * (FileInputStream), y con lecturas asíncronas de doble buffer (AsynchronousFileChannel en un grupo
+ * fijo de hilos de disco, leyendo el bloque siguiente mientras se escribe el actual). Ambos modos se
+ * prueban con el mismo tamaño de bloque, con el buffer de ServerThread y con CHUNK_SIZE, de modo que
+ * la diferencia entre ellos no se deba al tamaño del buffer. Las velocidades se expresan en MB/s
+ * (10^6 bytes por segundo).
+ * Para cada prueba se crea un conjunto de archivos nuevo y se intenta vaciar la caché de páginas del
+ * sistema para que los archivos se lean del disco. Varios hilos envían los archivos, cada uno por su
+ * propia conexión, a un servidor local que descarta los datos. Para cada prueba se muestran la
+ * velocidad total y la latencia de envío de cada archivo.
+ */
+public class FileSendBenchmark {
+
+    private static final String DROP_CACHES = "/proc/sys/vm/drop_caches";
+
+    //* Bloque grande de lectura (256 KB), comparado con el buffer de ServerThread.
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    //* Hilos de disco del modo asíncrono, es decir, lecturas simultáneas como máximo.
+    private static final int DISK_THREADS = 4;
+
+    /*
+     * Método principal del benchmark.
+     * @param args Argumentos de la línea de comandos:
+     *      1. Directorio en el que se crean los archivos de prueba (se borran al terminar).
+     *      2. Número de archivos de cada conjunto.
+     *      3. Tamaño de cada archivo en bytes.
+     *      4. Número de hilos que envían archivos a la vez.
+     */
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            System.err.println("Format: es.udc.redes.webserver.FileSendBenchmark <directory> <files> <file_size> <concurrency>");
+            System.exit(-1);
+        }
+        List<File> created = new ArrayList<>();
+        ExecutorService disk = Executors.newFixedThreadPool(DISK_THREADS);
+        try (ServerSocket drain = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            Path directory = Paths.get(args[0]);
+            int files = Integer.parseInt(args[1]);
+            long fileSize = Long.parseLong(args[2]);
+            int concurrency = Integer.parseInt(args[3]);
+            if (files < 1 || fileSize < 1 || concurrency < 1) {
+                throw new IllegalArgumentException("files, file size and concurrency must be positive");
+            }
+            Files.createDirectories(directory);
+
+            startDrain(drain);
+            for (int chunkSize : new int[]{ServerThread.BLOCKING_BUFFER_SIZE, CHUNK_SIZE}) {
+                for (String mode : new String[]{"blocking", "async"}) {
+                    System.out.println("BENCH: Creating " + files + " files of " + fileSize + " bytes in " + directory);
+                    File[] set = createFiles(directory, mode + "-" + chunkSize, files, fileSize, created);
+                    run(mode, chunkSize, set, concurrency, drain.getLocalPort(), disk);
+                    delete(created);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(-1);
+        } catch (Exception e) {
+            System.err.println("Error: " + e.getMessage());
+        } finally {
+            disk.shutdown();
+            delete(created);
+        }
+    }
+
+    /*
+     * Borra los archivos de prueba creados y vacía la lista.
+     */
+    private static void delete(List<File> created) {
+        for (File file : created) {
+            if (!file.delete()) {
+                System.err.println("Error: could not delete " + file);
+            }
+        }
+        created.clear();
+    }
+
+    /*
+     * Ejecuta una prueba: envía todos los archivos con el número de hilos indicado.
+     * @param mode "blocking" o "async".
+     * @param chunkSize Tamaño de cada lectura del archivo.
+     * @param disk Hilos de disco del modo asíncrono.
+     */
+    private static void run(String mode, int chunkSize, File[] files, int concurrency, int port,
+                            ExecutorService disk) throws Exception {
+        boolean cold = dropCaches();
+        AtomicInteger nextFile = new AtomicInteger();
+        long[] latencies = new long[files.length];
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        try {
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < concurrency; i++) {
+                results.add(executor.submit(() -> {
+                    long bytes = 0;
+                    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                        OutputStream output = socket.getOutputStream();
+                        int index;
+                        while ((index = nextFile.getAndIncrement()) < files.length) {
+                            long fileStart = System.nanoTime();
+                            bytes += mode.equals("async") ? sendAsync(files[index], output, chunkSize, disk)
+                                    : sendBlocking(files[index], output, chunkSize);
+                            latencies[index] = System.nanoTime() - fileStart;
+                        }
+                        output.flush();
+                    }
+                    return bytes;
+                }));
+            }
+            long bytes = 0;
+            for (Future<Long> result : results) {
+                bytes += result.get();
+            }
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            Arrays.sort(latencies);
+            System.out.println(String.format(Locale.ROOT,
+                    "BENCH: %-8s %6d B chunks, %s cache: %d files, %.3f s, %.1f MB/s, "
+                            + "latency p50=%.2f ms p99=%.2f ms max=%.2f ms",
+                    mode, chunkSize, cold ? "cold" : "warm", files.length, elapsed, bytes / elapsed / 1e6,
+                    percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                    latencies[latencies.length - 1] / 1e6));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /*
+     * Envío bloqueante, igual que el bucle de ServerThread.sendResource: cada bloque se lee del
+     * disco y después se escribe en el socket.
+     */
+    private static long sendBlocking(File file, OutputStream output, int chunkSize) throws IOException {
+        long sent = 0;
+        try (InputStream input = new FileInputStream(file)) {
+            byte[] buffer = new byte[chunkSize];
+            int bytesRead;
+            while ((bytesRead = input.read(buffer)) != -1) {
+                output.write(buffer, 0, bytesRead);
+                sent += bytesRead;
+            }
+        }
+        return sent;
+    }
+
+    /*
+     * Envío asíncrono con dos buffers: el siguiente bloque se lee en los hilos de disco mientras
+     * se escribe el actual, y cada bloque se escribe en cuanto su lectura termina.
+     */
+    private static long sendAsync(File file, OutputStream output, int chunkSize, ExecutorService disk)
+            throws IOException {
+        ByteBuffer current = ByteBuffer.allocate(chunkSize);
+        ByteBuffer next = ByteBuffer.allocate(chunkSize);
+        long sent = 0;
+        try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(file.toPath(),
+                Set.of(StandardOpenOption.READ), disk)) {
+            Future<Integer> pending = channel.read(current, 0);
+            int bytesRead;
+            while ((bytesRead = await(pending)) > 0) {
+                //* Se pide el siguiente bloque antes de escribir el actual.
+                next.clear();
+                pending = channel.read(next, sent + bytesRead);
+                try {
+                    output.write(current.array(), 0, bytesRead);
+                } finally {
+                    //* No se cierra el canal con una lectura en curso.
+                    if (!pending.isDone()) {
+                        try {
+                            pending.get();
+                        } catch (Exception ignored) {
+                            //* El error, si lo hay, se informa en la siguiente espera.
+                        }
+                    }
+                }
+                sent += bytesRead;
+
+                ByteBuffer swap = current;
+                current = next;
+                next = swap;
+            }
+        }
+        return sent;
+    }
+
+    /*
+     * Espera a que termine una lectura asíncrona.
+     * @return Número de bytes leídos, o -1 al final del archivo.
+     */
+    private static int await(Future<Integer> read) throws IOException {
+        try {
+            return read.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while reading file");
+        }
+    }
+
+    /*
+     * Intenta vaciar la caché de páginas del sistema (requiere permisos de administrador en Linux).
+     * @return true si se ha podido vaciar.
+     */
+    private static boolean dropCaches() {
+        try (FileOutputStream output = new FileOutputStream(DROP_CACHES)) {
+            output.write('3');
+            return true;
+        } catch (IOException e) {
+            System.err.println("BENCH: Could not drop the page cache (" + e.getMessage()
+                    + "), files may be read from memory");
+            return false;
+        }
+    }
+
+    /*
+     * Crea los archivos de prueba con contenido aleatorio y los sincroniza con el disco.
+     */
+    private static File[] createFiles(Path directory, String prefix, int count, long size, List<File> created)
+            throws IOException {
+        Random random = new Random(count);
+        byte[] buffer = new byte[CHUNK_SIZE];
+        File[] files = new File[count];
+        for (int i = 0; i < count; i++) {
+            files[i] = directory.resolve(prefix + "-" + i + ".bin").toFile();
+            created.add(files[i]);
+            try (FileOutputStream output = new FileOutputStream(files[i])) {
+                for (long written = 0; written < size; written += buffer.length) {
+                    random.nextBytes(buffer);
+                    output.write(buffer, 0, (int) Math.min(buffer.length, size - written));
+                }
+                output.getFD().sync();
+            }
+        }
+        return files;
+    }
+
+    /*
+     * Acepta conexiones en segundo plano y descarta todo lo que recibe por ellas.
+     */
+    private static void startDrain(ServerSocket drain) {
+        Thread acceptor = new Thread(() -> {
+            try {
+                while (true) {
+                    Socket socket = drain.accept();
+                    Thread reader = new Thread(() -> {
+                        try (Socket s = socket; InputStream input = s.getInputStream()) {
+                            byte[] buffer = new byte[CHUNK_SIZE];
+                            while (input.read(buffer) != -1) {
+                                //* Los datos se descartan.
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Error: " + e.getMessage());
+                        }
+                    });
+                    reader.setDaemon(true);
+                    reader.start();
+                }
+            } catch (IOException e) {
+                //* El servidor se ha cerrado al terminar el benchmark.
+            }
+        }, "drain");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /*
+     * @return El valor del percentil indicado en un array ordenado.
+     */
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
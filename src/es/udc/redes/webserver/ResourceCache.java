@@ -0,0 +1,363 @@
+package es.udc.redes.webserver;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import es.udc.redes.util.ContentTypeDetector;
+
+/*
+ * Caché de los recursos servidos por el servidor web.
+ * Para cada archivo se guardan su tamaño y fecha de modificación (su versión), las cabeceras
+ * de la respuesta ya calculadas (Last-Modified, Content-Length, Content-Type y ETag), el número
+ * de accesos y, si es pequeño, su contenido. Una entrada sólo se usa si el archivo conserva la
+ * misma versión; si no, se vuelve a crear.
+ * Los directorios se representan con un listado HTML de sus entradas, que se genera una vez por
+ * versión del directorio (su fecha de modificación, que cambia al crear, borrar o renombrar entradas).
+ * El índice de la caché (sin el contenido) puede guardarse en un archivo y cargarse al arrancar
+ * el servidor: las entradas cuyos archivos no han cambiado se recuperan y su contenido se lee en
+ * segundo plano, empezando por los recursos más usados.
+ */
+class ResourceCache {
+
+    //* Tamaño máximo de un archivo para guardar su contenido en memoria (64 KB).
+    static final int MAX_CONTENT_SIZE = 64 * 1024;
+
+    //* Memoria máxima ocupada por el contenido de todos los archivos (32 MB).
+    private static final long MAX_CONTENT_BYTES = 32L * 1024 * 1024;
+
+    //* Número máximo de entradas; al superarse se descarta la menos usada.
+    private static final int MAX_ENTRIES = 1024;
+
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    private final AtomicLong contentBytes = new AtomicLong();
+
+    /*
+     * Obtiene la entrada de un archivo y cuenta un acceso.
+     * @param file Archivo solicitado.
+     * @return Entrada con la versión actual del archivo.
+     * @throws IOException Si no se pueden leer los atributos o el contenido del archivo.
+     */
+    Resource get(File file) throws IOException {
+        Resource resource = current(file);
+        resource.hits.increment();
+        return resource;
+    }
+
+    /*
+     * Obtiene la entrada de un archivo sin contar un acceso, creándola o renovándola si el archivo
+     * ha cambiado. Se usa cuando la misma petición vuelve a consultar el recurso.
+     * @param file Archivo solicitado.
+     * @return Entrada con la versión actual del archivo.
+     * @throws IOException Si no se pueden leer los atributos o el contenido del archivo.
+     */
+    Resource current(File file) throws IOException {
+        Path path = file.toPath();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String key = path.normalize().toString();
+
+        Resource resource = resources.get(key);
+        if (resource == null || !resource.isVersion(attributes)) {
+            if (attributes.isDirectory()) {
+                resource = new Resource(file, listing(path), attributes.lastModifiedTime().toMillis());
+                contentBytes.addAndGet(resource.size);
+            } else {
+                resource = new Resource(file, attributes.size(), attributes.lastModifiedTime().toMillis(),
+                        ContentTypeDetector.detect(path));
+            }
+            put(key, resource);
+        }
+        loadContent(resource);
+        return resource;
+    }
+
+    /*
+     * Guarda el índice de la caché ordenado por número de accesos, sustituyendo al anterior.
+     * Cada línea contiene: accesos, tamaño, fecha en milisegundos, tipo de contenido y ruta,
+     * separados por tabuladores.
+     * @param snapshot Archivo del índice.
+     * @return Número de entradas guardadas.
+     * @throws IOException Si no se puede escribir el archivo.
+     */
+    int save(Path snapshot) throws IOException {
+        //* Los listados de directorios no se guardan: se regeneran al pedirlos.
+        List<Resource> sorted = new ArrayList<>();
+        for (Resource r : resources.values()) {
+            if (!r.directory) {
+                sorted.add(r);
+            }
+        }
+        sorted.sort(Comparator.comparingLong((Resource r) -> r.hits.sum()).reversed());
+
+        Path temporary = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+        try (BufferedWriter output = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            for (Resource r : sorted) {
+                output.write(r.hits.sum() + "\t" + r.size + "\t" + r.modified + "\t" + r.contentType + "\t"
+                        + r.file.getPath());
+                output.newLine();
+            }
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return sorted.size();
+    }
+
+    /*
+     * Carga un índice guardado con save. Sólo se recuperan las entradas cuyo archivo existe y
+     * conserva el mismo tamaño y fecha de modificación; su contenido no se lee todavía.
+     * @param snapshot Archivo del índice.
+     * @return Entradas recuperadas, de la más usada a la menos usada.
+     * @throws IOException Si no se puede leer el archivo.
+     */
+    List<Resource> load(Path snapshot) throws IOException {
+        List<Resource> loaded = new ArrayList<>();
+        try (BufferedReader input = Files.newBufferedReader(snapshot, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = input.readLine()) != null && loaded.size() < MAX_ENTRIES) {
+                String[] parts = line.split("\t", 5);
+                if (parts.length != 5) {
+                    continue;
+                }
+                try {
+                    File file = new File(parts[4]);
+                    long size = Long.parseLong(parts[1]);
+                    long modified = Long.parseLong(parts[2]);
+                    BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+                    if (!attributes.isRegularFile() || attributes.size() != size
+                            || attributes.lastModifiedTime().toMillis() != modified) {
+                        //* El archivo ha cambiado: se volverá a crear su entrada cuando se pida.
+                        continue;
+                    }
+                    Resource resource = new Resource(file, size, modified, parts[3]);
+                    resource.hits.add(Long.parseLong(parts[0]));
+                    put(file.toPath().normalize().toString(), resource);
+                    loaded.add(resource);
+                } catch (NumberFormatException | NoSuchFileException e) {
+                    //* Las líneas dañadas y los archivos borrados se ignoran.
+                }
+            }
+        }
+        return loaded;
+    }
+
+    /*
+     * Lee el contenido de las entradas indicadas, en orden, mientras quede memoria para ello.
+     * Se usa para precargar en segundo plano las entradas recuperadas con load.
+     * @param entries Entradas a precargar.
+     * @return Número de entradas cuyo contenido está en memoria.
+     */
+    int warm(List<Resource> entries) {
+        int warmed = 0;
+        for (Resource resource : entries) {
+            try {
+                loadContent(resource);
+                if (resource.content != null) {
+                    warmed++;
+                }
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            }
+        }
+        return warmed;
+    }
+
+    /*
+     * Añade una entrada, sustituyendo a la anterior de la misma ruta y descartando la menos
+     * usada si se supera el número máximo de entradas.
+     */
+    private void put(String key, Resource resource) {
+        release(resources.put(key, resource));
+        if (resources.size() > MAX_ENTRIES) {
+            resources.entrySet().stream()
+                    .filter(e -> e.getValue() != resource)
+                    .min(Comparator.comparingLong(e -> e.getValue().hits.sum()))
+                    .ifPresent(e -> release(resources.remove(e.getKey())));
+        }
+    }
+
+    /*
+     * Lee el contenido de un archivo pequeño si todavía no está en memoria y cabe en la caché.
+     */
+    private void loadContent(Resource resource) throws IOException {
+        if (resource.content != null || resource.directory || resource.size > MAX_CONTENT_SIZE) {
+            return;
+        }
+        synchronized (resource) {
+            if (resource.content != null || contentBytes.addAndGet(resource.size) > MAX_CONTENT_BYTES) {
+                if (resource.content == null) {
+                    contentBytes.addAndGet(-resource.size);
+                }
+                return;
+            }
+            byte[] content = Files.readAllBytes(resource.file.toPath());
+            if (content.length != resource.size) {
+                //* El archivo ha cambiado mientras se leía: se deja sin contenido.
+                contentBytes.addAndGet(-resource.size);
+                return;
+            }
+            resource.content = content;
+        }
+    }
+
+    /*
+     * Genera el listado HTML de un directorio: primero los subdirectorios y después los archivos,
+     * ordenados por nombre, con enlaces relativos al propio directorio.
+     * @param directory Directorio a listar.
+     * @return El listado codificado en UTF-8.
+     * @throws IOException Si no se puede leer el directorio.
+     */
+    private static byte[] listing(Path directory) throws IOException {
+        List<String> directories = new ArrayList<>();
+        List<String> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (Files.isDirectory(entry)) {
+                    directories.add(name + "/");
+                } else {
+                    files.add(name);
+                }
+            }
+        }
+        Collections.sort(directories);
+        Collections.sort(files);
+        directories.addAll(files);
+
+        String title = "Index of " + escape(directory.getFileName() != null ? directory.getFileName().toString() : "/");
+        StringBuilder sB = new StringBuilder();
+        sB.append("<html>\n   <head>\n      <meta charset=\"utf-8\">\n      <title>").append(title).append("</title>\n")
+                .append("   </head>\n   <body>\n      <h1>").append(title).append("</h1>\n      <ul>\n")
+                .append("         <li><a href=\"../\">../</a></li>\n");
+        for (String name : directories) {
+            sB.append("         <li><a href=\"").append(encode(name)).append("\">").append(escape(name))
+                    .append("</a></li>\n");
+        }
+        sB.append("      </ul>\n   </body>\n</html>\n");
+        return sB.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /*
+     * Escapa los caracteres especiales de HTML.
+     */
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    /*
+     * Codifica un nombre para usarlo en una URL, con %XX para los bytes UTF-8 fuera de los caracteres seguros.
+     */
+    private static String encode(String name) {
+        StringBuilder sB = new StringBuilder();
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xFF;
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || "-._~/".indexOf(c) >= 0) {
+                sB.append((char) c);
+            } else {
+                sB.append('%').append(Character.toUpperCase(Character.forDigit(c >> 4, 16)))
+                        .append(Character.toUpperCase(Character.forDigit(c & 0xF, 16)));
+            }
+        }
+        return sB.toString();
+    }
+
+    /*
+     * Descuenta la memoria usada por una entrada eliminada.
+     */
+    private void release(Resource resource) {
+        if (resource != null) {
+            synchronized (resource) {
+                if (resource.content != null) {
+                    contentBytes.addAndGet(-resource.size);
+                    resource.content = null;
+                }
+            }
+        }
+    }
+
+    /*
+     * Versión de un archivo en la caché.
+     */
+    static class Resource {
+        final File file;
+        final long size;
+        final long modified;
+        final String contentType;
+        final String etag;
+
+        //* Indica si la entrada es el listado de un directorio.
+        final boolean directory;
+
+        //* Cabeceras de la respuesta que sólo dependen de la versión del archivo.
+        final String headers;
+
+        //* Número de accesos.
+        final LongAdder hits = new LongAdder();
+
+        //* Contenido del archivo, o null si no está en memoria.
+        volatile byte[] content;
+
+        Resource(File file, long size, long modified, String contentType) {
+            this(file, size, modified, contentType, false);
+        }
+
+        /*
+         * Crea la entrada del listado de un directorio.
+         * @param directory Directorio listado.
+         * @param listing Listado HTML.
+         * @param modified Fecha de modificación del directorio.
+         */
+        Resource(File directory, byte[] listing, long modified) {
+            this(directory, listing.length, modified, "text/html", true);
+            this.content = listing;
+        }
+
+        private Resource(File file, long size, long modified, String contentType, boolean directory) {
+            this.file = file;
+            this.size = size;
+            this.modified = modified;
+            this.contentType = contentType;
+            this.directory = directory;
+            this.etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+
+            DateFormat formatter = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss z", Locale.ENGLISH);
+            String n = "\r\n";
+            this.headers = "Last-Modified: " + formatter.format(new Date(modified)) + n
+                    + "Content-Length: " + size + n
+                    + "Content-Type: " + contentType + n
+                    + "ETag: " + etag + n;
+        }
+
+        /*
+         * @return true si la entrada corresponde a la versión del archivo con estos atributos.
+         */
+        boolean isVersion(BasicFileAttributes attributes) {
+            if (directory) {
+                return attributes.isDirectory() && attributes.lastModifiedTime().toMillis() == modified;
+            }
+            return !attributes.isDirectory() && attributes.size() == size
+                    && attributes.lastModifiedTime().toMillis() == modified;
+        }
+    }
+}
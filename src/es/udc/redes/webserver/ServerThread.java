@@ -5,13 +5,13 @@ package es.udc.redes.webserver;
  */
 import java.net.*;
 import java.io.*;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
 
 /*
  * Clase ServerThread que maneja las conexiones individuales de clientes HTTP.
@@ -19,20 +19,57 @@ import java.util.Locale;
  */
 public class ServerThread extends Thread {
 
+    //* Plazos de cada conexión, en milisegundos.
+    //* Espera de la primera línea de la petición desde que se acepta la conexión.
+    private static final long IDLE_TIMEOUT = Long.getLong("webserver.idleTimeout", 10000);
+    //* Recepción completa de las cabeceras desde que se acepta la conexión.
+    private static final long HEADER_TIMEOUT = Long.getLong("webserver.headerTimeout", 20000);
+    //* Duración total de la petición, incluido el envío de la respuesta.
+    private static final long REQUEST_TIMEOUT = Long.getLong("webserver.requestTimeout", 120000);
+    //* Tiempo máximo sin poder enviar ningún byte de la respuesta.
+    private static final long WRITE_TIMEOUT = Long.getLong("webserver.writeTimeout", 10000);
+
+    //* Tamaño del buffer con el que se leen los archivos que no están en la caché.
+    static final int BLOCKING_BUFFER_SIZE = 1024;
+
+    //* Conexiones cerradas al vencer cada plazo.
+    static final LongAdder idleExpired = new LongAdder();
+    static final LongAdder headerExpired = new LongAdder();
+    static final LongAdder requestExpired = new LongAdder();
+    static final LongAdder writeExpired = new LongAdder();
+
     private final Socket socket;
+    private final ResourceCache cache;
+    private final TimerWheel timers;
+
+    //* Plazo que ha cerrado la conexión, o null si no ha vencido ninguno.
+    private volatile String expired = null;
+    private volatile boolean finished = false;
+
+    //* Bytes de la respuesta enviados y plazos pendientes.
+    private volatile long written = 0;
+    private TimerWheel.Timeout headerTimeout;
+    private volatile TimerWheel.Timeout writeTimeout;
 
     /*
      * Constructor de la clase ServerThread.
      * @param s Socket que se va a asociar a este hilo.
+     * @param cache Caché de recursos compartida por todos los hilos.
+     * @param timers Rueda de temporizadores de los plazos de las conexiones.
      */
-    public ServerThread(Socket s) {
+    public ServerThread(Socket s, ResourceCache cache, TimerWheel timers) {
         this.socket = s;
+        this.cache = cache;
+        this.timers = timers;
     }
 
     /*
      * Método que se ejecuta al iniciar el hilo. Se encarga de gestionar la solicitud del cliente.
      */
     public void run() {
+        TimerWheel.Timeout requestTimeout = timers.schedule(() -> expire("request", requestExpired), REQUEST_TIMEOUT);
+        TimerWheel.Timeout idleTimeout = timers.schedule(() -> expire("idle", idleExpired), IDLE_TIMEOUT);
+        headerTimeout = timers.schedule(() -> expire("header", headerExpired), HEADER_TIMEOUT);
         try {
             //* Obtiene la dirección IP y el puerto del cliente.
             InetAddress address = socket.getInetAddress();
@@ -43,6 +80,7 @@ public class ServerThread extends Thread {
 
             //* Lee la primera línea de la petición HTTP.
             String request = input.readLine();
+            idleTimeout.cancel();
             System.out.println("SERVER: Received " + request + " from " + address + ":" + port);
 
             if (request != null) {
@@ -54,14 +92,50 @@ public class ServerThread extends Thread {
 
                 //* Si el comando no es GET ni HEAD, se devuelve un error 400 (Bad Request).
                 if(!command.equals("HEAD") && !command.equals("GET")) {
+                    headerTimeout.cancel();
                     String filePath = serverPath + File.separator + "error400.html";
                     File error400File = new File(filePath);
                     handleBadRequest(socket, error400File);
                 } else{
                     //* Si el comando es válido, se maneja la solicitud según el recurso.
-                    File resource = new File(serverPath + requestResource);
+                    File resource = new File(serverPath + decodePath(requestResource));
                     File error404File = new File(serverPath + File.separator + "error404.html");
 
+                    //* Las rutas que, una vez normalizadas, quedan fuera del directorio del servidor se rechazan
+                    //* con un error 403 (Forbidden) antes de consultar el sistema de archivos.
+                    Path root = new File(serverPath).toPath().toAbsolutePath().normalize();
+                    if (!resource.toPath().toAbsolutePath().normalize().startsWith(root)) {
+                        headerTimeout.cancel();
+                        File error403File = new File(serverPath + File.separator + "error403.html");
+                        if (command.equals("GET")) {
+                            handleForbidden(socket, error403File);
+                        } else {
+                            handleHead(socket, error403File, "403 Forbidden");
+                        }
+                        input.close();
+                        return;
+                    }
+
+                    //* Un directorio sin '/' final se redirige para que los enlaces relativos funcionen.
+                    if (resource.isDirectory() && !requestResource.endsWith("/")) {
+                        headerTimeout.cancel();
+                        handleRedirect(socket, requestResource + "/");
+                        input.close();
+                        return;
+                    }
+                    //* Un directorio se sirve con su index.html o, si no lo tiene, con un listado generado.
+                    if (resource.isDirectory()) {
+                        File index = new File(resource, "index.html");
+                        if (index.isFile()) {
+                            resource = index;
+                        }
+                    }
+
+                    //* Sólo handleGet lee las cabeceras; en los demás casos se deja de esperarlas.
+                    if (!command.equals("GET") || !resource.exists()) {
+                        headerTimeout.cancel();
+                    }
+
                     //* Si el comando es GET y el recurso existe, se maneja la solicitud GET.
                     if (command.equals("GET") && resource.exists()) {
                         handleGet(socket, input, resource);
@@ -84,9 +158,19 @@ public class ServerThread extends Thread {
             //* Manejo de error de timeout.
             System.err.println("Nothing received in 300 secs");
         } catch (Exception e) {
-            //* Manejo de error.
-            System.err.println("Error: " + e.getMessage());
+            //* Si ha vencido un plazo, el error se debe al cierre del socket.
+            if (expired == null) {
+                //* Manejo de error.
+                System.err.println("Error: " + e.getMessage());
+            }
         } finally {
+            finished = true;
+            requestTimeout.cancel();
+            idleTimeout.cancel();
+            headerTimeout.cancel();
+            if (writeTimeout != null) {
+                writeTimeout.cancel();
+            }
             try {
                 //* Cerrar el socket.
                 socket.close();
@@ -121,6 +205,7 @@ public class ServerThread extends Thread {
             }
             request = input.readLine();
         }
+        headerTimeout.cancel();
         //* Si el archivo ha sido modificado o no se recibió el encabezado If-Modified-Since, se responde con el recurso.
         if (modifiedSince) {
             response = getHTTPResponse("200 OK", resource, resource.toPath());
@@ -145,6 +230,20 @@ public class ServerThread extends Thread {
         sendHTTPResponse(socket, response);
     }
 
+    /*
+     * Método que redirige la solicitud a otra ruta del servidor (301 Moved Permanently).
+     * @param socket Socket del cliente.
+     * @param location Ruta a la que se redirige.
+     * @throws IOException Si ocurre un error al escribir datos.
+     */
+    public void handleRedirect(Socket socket, String location) throws IOException {
+        String n = "\r\n";
+        String response = getHTTPResponse("301 Moved Permanently", null, null);
+        //* La cabecera Location se añade antes de la línea en blanco final.
+        response = response.substring(0, response.length() - n.length()) + "Location: " + location + n + n;
+        sendHTTPResponse(socket, response);
+    }
+
     /*
      * Método que maneja una solicitud con error 400 (Bad Request).
      * @param socket Socket del cliente.
@@ -157,6 +256,18 @@ public class ServerThread extends Thread {
         sendResource(socket, resource);
     }
 
+    /*
+     * Método que maneja una solicitud con error 403 (Forbidden).
+     * @param socket Socket del cliente.
+     * @param resource Archivo de error 403.
+     * @throws IOException Si ocurre un error al leer o escribir datos.
+     */
+    public void handleForbidden(Socket socket, File resource) throws IOException{
+        String response = getHTTPResponse("403 Forbidden", resource, resource.toPath());
+        sendHTTPResponse(socket, response);
+        sendResource(socket, resource);
+    }
+
     /*
      * Método que maneja una solicitud con error 404 (Not Found).
      * @param socket Socket del cliente.
@@ -169,6 +280,24 @@ public class ServerThread extends Thread {
         sendResource(socket, resource);
     }
 
+    /*
+     * Método que decodifica los caracteres %XX de la ruta solicitada, como los de los enlaces de
+     * los listados de directorios.
+     * @param path Ruta de la petición.
+     * @return Ruta decodificada, o la original si no es una ruta URI válida.
+     */
+    private String decodePath(String path) {
+        if (path.indexOf('%') < 0) {
+            return path;
+        }
+        try {
+            String decoded = new URI(path).getPath();
+            return decoded != null ? decoded : path;
+        } catch (URISyntaxException e) {
+            return path;
+        }
+    }
+
     /*
      * Método que obtiene la fecha y hora actual en formato HTTP.
      * @return Fecha y hora actual en formato HTTP.
@@ -207,11 +336,8 @@ public class ServerThread extends Thread {
         sB.append("Date: ").append(getDate()).append(n);
         sB.append("Server: ficServer/0.0.1 (Java)").append(n);
         if(path != null){
-            sB.append("Last-Modified: ").append(getDateModified(resource)).append(n);
-            long bitsLength = Files.size(path);
-            sB.append("Content-Length: ").append(bitsLength).append(n);
-            String contentType = Files.probeContentType(path);
-            sB.append("Content-Type: ").append(contentType).append(n);
+            //* Last-Modified, Content-Length, Content-Type y ETag se calculan una vez por versión del archivo.
+            sB.append(cache.get(resource).headers);
         }
         sB.append(n);
 
@@ -250,8 +376,11 @@ public class ServerThread extends Thread {
         System.out.println("SERVER: Sending response from "
                 + socket.getLocalAddress() + ":" + socket.getPort()
                 + "\nRenponse:\n" + response);
+        //* El plazo de escritura cubre toda la respuesta, desde la línea de estado y las cabeceras.
+        startWriteTimeout();
         output.write(response);
         output.flush();
+        written += response.length();
     }
 
     /*
@@ -262,14 +391,85 @@ public class ServerThread extends Thread {
      */
     private void sendResource(Socket clientSocket, File resource) throws IOException{
         OutputStream output = clientSocket.getOutputStream();
+
+        startWriteTimeout();
+
+        //* Los archivos pequeños se envían desde la caché sin leer el disco.
+        byte[] content = cache.current(resource).content;
+        if (content != null) {
+            for (int offset = 0; offset < content.length; offset += 8192) {
+                write(output, content, offset, Math.min(8192, content.length - offset));
+            }
+            output.flush();
+            writeTimeout.cancel();
+            output.close();
+            return;
+        }
+
         FileInputStream input = new FileInputStream(resource);
-        byte[] buffer = new byte[1024];
+        byte[] buffer = new byte[BLOCKING_BUFFER_SIZE];
         int bytesRead;
         while ((bytesRead = input.read(buffer)) != -1) {
-            output.write(buffer, 0, bytesRead);
+            write(output, buffer, 0, bytesRead);
         }
-        output.flush();
         input.close();
+        output.flush();
+        writeTimeout.cancel();
         output.close();
     }
+
+    /*
+     * Escribe un bloque de la respuesta y anota el progreso para el plazo de escritura.
+     */
+    private void write(OutputStream output, byte[] buffer, int offset, int length) throws IOException {
+        output.write(buffer, offset, length);
+        written += length;
+    }
+
+    /*
+     * Programa el plazo de escritura si esta respuesta todavía no lo tiene. Se cancela al terminar
+     * de enviar el recurso o, en las respuestas sin cuerpo, al terminar la petición.
+     */
+    private void startWriteTimeout() {
+        if (writeTimeout == null) {
+            armWriteTimeout();
+        }
+    }
+
+    /*
+     * Programa el plazo de escritura. Al vencer, si se ha enviado algo desde que se programó se
+     * vuelve a programar; si no, el cliente no está leyendo y se cierra la conexión.
+     */
+    private void armWriteTimeout() {
+        long mark = written;
+        writeTimeout = timers.schedule(() -> {
+            if (written != mark) {
+                armWriteTimeout();
+            } else {
+                expire("write", writeExpired);
+            }
+        }, WRITE_TIMEOUT);
+    }
+
+    /*
+     * Cierra la conexión al vencer un plazo. Se ejecuta en el hilo de la rueda de temporizadores;
+     * al cerrar el socket, la lectura o escritura bloqueada en este hilo termina con un error.
+     * @param deadline Nombre del plazo vencido.
+     * @param counter Contador de conexiones cerradas por ese plazo.
+     */
+    private void expire(String deadline, LongAdder counter) {
+        if (finished || expired != null) {
+            return;
+        }
+        expired = deadline;
+        counter.increment();
+        System.err.println("SERVER: Closing " + socket.getInetAddress() + ":" + socket.getPort()
+                + ", " + deadline + " timeout");
+        try {
+            socket.close();
+        } catch (IOException e) {
+            //* Manejo de error cerrando el socket.
+            System.err.println("Error closing socket: " + e.getMessage());
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+package es.udc.redes.webserver;
+
+/*
+ * Librerías necesarias para la correcta implementación del programa.
+ */
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/*
+ * Rueda de temporizadores (hashed timer wheel) para los plazos de las conexiones.
+ * El tiempo se divide en ticks y cada temporizador se guarda en la casilla del tick en que vence;
+ * los que vencen más allá de una vuelta completa esperan el número de vueltas restantes. Un único
+ * hilo avanza la rueda y ejecuta las tareas vencidas, por lo que programar o cancelar un
+ * temporizador sólo añade un objeto a una cola. Al cancelarlo se suelta además su tarea, y el
+ * hilo de la rueda lo quita de su casilla en el siguiente tick, de modo que los temporizadores
+ * cancelados no retienen memoria hasta que llegaría su plazo.
+ * Cada casilla es una lista doblemente enlazada de temporizadores, que sólo modifica el hilo de
+ * la rueda. Las tareas se ejecutan en ese hilo y deben ser breves.
+ */
+class TimerWheel {
+
+    private final long tickMillis;
+
+    //* Primer temporizador de cada casilla.
+    private final Timeout[] wheel;
+
+    //* Temporizadores programados que el hilo de la rueda todavía no ha colocado en su casilla.
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+
+    //* Temporizadores cancelados que el hilo de la rueda todavía no ha quitado de su casilla.
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+
+    private final long startTime = System.nanoTime();
+    private long tick = 0;
+
+    /*
+     * Crea la rueda e inicia su hilo.
+     * @param tickMillis Duración de un tick en milisegundos (precisión de los plazos).
+     * @param slots Número de casillas de la rueda.
+     */
+    TimerWheel(long tickMillis, int slots) {
+        this.tickMillis = tickMillis;
+        this.wheel = new Timeout[slots];
+        Thread worker = new Thread(this::run, "timer-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /*
+     * Programa una tarea.
+     * @param task Tarea que se ejecuta al vencer el plazo, salvo que se haya cancelado antes.
+     * @param delayMillis Plazo en milisegundos.
+     * @return Temporizador que permite cancelar la tarea.
+     */
+    Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(this, task, elapsedMillis() + delayMillis);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /*
+     * Bucle del hilo de la rueda: espera al siguiente tick, coloca los temporizadores nuevos,
+     * quita los cancelados y ejecuta los de la casilla actual que han vencido.
+     */
+    private void run() {
+        while (true) {
+            long sleep = (tick + 1) * tickMillis - elapsedMillis();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            tick++;
+
+            Timeout timeout;
+            while ((timeout = pending.poll()) != null) {
+                if (!timeout.cancelled) {
+                    //* Se redondea hacia arriba para que al llegar a la casilla el plazo haya vencido;
+                    //* los plazos ya vencidos se colocan en la casilla actual.
+                    long deadlineTick = Math.max(tick, (timeout.deadline + tickMillis - 1) / tickMillis);
+                    link(timeout, (int) (deadlineTick % wheel.length));
+                }
+            }
+            //* Los cancelados antes de colocarse ya se han descartado al sacarlos de la cola anterior.
+            while ((timeout = cancelled.poll()) != null) {
+                unlink(timeout);
+            }
+
+            long now = elapsedMillis();
+            timeout = wheel[(int) (tick % wheel.length)];
+            while (timeout != null) {
+                Timeout next = timeout.next;
+                if (timeout.deadline <= now) {
+                    unlink(timeout);
+                    Runnable task = timeout.task;
+                    if (task != null) {
+                        try {
+                            task.run();
+                        } catch (RuntimeException e) {
+                            System.err.println("Error: " + e.getMessage());
+                        }
+                    }
+                }
+                timeout = next;
+            }
+        }
+    }
+
+    /*
+     * Añade un temporizador al principio de una casilla.
+     */
+    private void link(Timeout timeout, int slot) {
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = wheel[slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        wheel[slot] = timeout;
+    }
+
+    /*
+     * Quita un temporizador de su casilla, si está en alguna.
+     */
+    private void unlink(Timeout timeout) {
+        if (timeout.slot < 0) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            wheel[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.slot = -1;
+    }
+
+    /*
+     * @return Milisegundos transcurridos desde la creación de la rueda.
+     */
+    private long elapsedMillis() {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /*
+     * Temporizador programado en la rueda.
+     */
+    static class Timeout {
+        private final TimerWheel owner;
+        private final long deadline;
+        private volatile Runnable task;
+        private volatile boolean cancelled = false;
+
+        //* Casilla y enlaces de la lista, modificados sólo por el hilo de la rueda (-1 si no está en ninguna).
+        private int slot = -1;
+        private Timeout prev;
+        private Timeout next;
+
+        Timeout(TimerWheel owner, Runnable task, long deadline) {
+            this.owner = owner;
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /*
+         * Cancela el temporizador. La tarea se suelta en el momento y el hilo de la rueda quita
+         * la entrada de su casilla en el siguiente tick.
+         */
+        void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                task = null;
+                owner.cancelled.add(this);
+            }
+        }
+    }
+}
@@ -3,7 +3,15 @@ package es.udc.redes.webserver;
 /*
  * Librerías necesarias para la correcta implementación del programa.
  */
+import java.io.IOException;
 import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /*
  *
@@ -11,10 +19,21 @@ import java.net.*;
  */
 public class WebServer {
 
+    //* Archivo en el que se guarda el índice de la caché y periodo de guardado en segundos.
+    private static final Path SNAPSHOT = Paths.get(System.getProperty("webserver.snapshot", "webserver-cache.idx"));
+    private static final long SNAPSHOT_PERIOD = Long.getLong("webserver.snapshot.period", 60);
+
     /*
      * Método principal que inicia el servidor web.
      * @param args Argumentos de la línea de comandos. Se espera un solo parámetro:
      *      1. Número de puerto en el que el servidor escuchará conexiones.
+     *  Propiedades del sistema opcionales:
+     *      -Dwebserver.snapshot=<archivo>      Índice de la caché (por defecto, webserver-cache.idx).
+     *      -Dwebserver.snapshot.period=<secs>  Periodo de guardado del índice (por defecto, 60).
+     *      -Dwebserver.idleTimeout=<ms>        Espera de la primera línea de la petición (por defecto, 10000).
+     *      -Dwebserver.headerTimeout=<ms>      Recepción de las cabeceras (por defecto, 20000).
+     *      -Dwebserver.requestTimeout=<ms>     Duración total de la petición (por defecto, 120000).
+     *      -Dwebserver.writeTimeout=<ms>       Tiempo máximo sin enviar datos (por defecto, 10000).
      */
     public static void main(String[] args) {
         if(args.length != 1) {
@@ -23,6 +42,15 @@ public class WebServer {
         }
         ServerSocket listeningSocket = null;
         int port = Integer.parseInt(args[0]);
+        ResourceCache cache = new ResourceCache();
+        warmStart(cache);
+        //* Rueda de temporizadores con ticks de 100 ms para los plazos de las conexiones.
+        TimerWheel timers = new TimerWheel(100, 512);
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                System.out.println("Expired connections: idle " + ServerThread.idleExpired.sum()
+                        + ", header " + ServerThread.headerExpired.sum()
+                        + ", request " + ServerThread.requestExpired.sum()
+                        + ", write " + ServerThread.writeExpired.sum())));
         try{
             //* Crear un socket de servidor que escucha en el puerto especificado.
             listeningSocket = new ServerSocket(port);
@@ -37,7 +65,7 @@ public class WebServer {
                 Socket connectionSocket = listeningSocket.accept();
 
                 //* Crear un hilo para manejar la conexión con el cliente.
-                ServerThread thread = new ServerThread(connectionSocket);
+                ServerThread thread = new ServerThread(connectionSocket, cache, timers);
                 thread.start();
             }
         } catch (SocketTimeoutException e){
@@ -58,4 +86,52 @@ public class WebServer {
             }
         }
     }
-}
\ No newline at end of file
+
+    /*
+     * Recupera el índice de la caché guardado en la ejecución anterior y programa su guardado.
+     * Las entradas válidas se precargan en un hilo aparte mientras el servidor ya acepta conexiones.
+     * El índice se guarda periódicamente y al terminar el servidor.
+     * @param cache Caché del servidor.
+     */
+    private static void warmStart(ResourceCache cache) {
+        if (Files.exists(SNAPSHOT)) {
+            try {
+                List<ResourceCache.Resource> entries = cache.load(SNAPSHOT);
+                System.out.println("Cache index loaded: " + entries.size() + " valid entries");
+                Thread warmer = new Thread(() -> {
+                    long start = System.nanoTime();
+                    int warmed = cache.warm(entries);
+                    System.out.println("Cache warmed: " + warmed + " resources in "
+                            + (System.nanoTime() - start) / 1000000 + " ms");
+                }, "cache-warmer");
+                warmer.setDaemon(true);
+                warmer.start();
+            } catch (IOException e) {
+                System.err.println("Error loading cache index: " + e.getMessage());
+            }
+        }
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "cache-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> saveSnapshot(cache), SNAPSHOT_PERIOD, SNAPSHOT_PERIOD, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            scheduler.shutdownNow();
+            saveSnapshot(cache);
+        }));
+    }
+
+    /*
+     * Guarda el índice de la caché.
+     * @param cache Caché del servidor.
+     */
+    private static synchronized void saveSnapshot(ResourceCache cache) {
+        try {
+            cache.save(SNAPSHOT);
+        } catch (IOException e) {
+            System.err.println("Error saving cache index: " + e.getMessage());
+        }
+    }
+}